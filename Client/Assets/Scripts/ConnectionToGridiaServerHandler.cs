@@ -15,6 +15,7 @@ public class ConnectionToGridiaServerHandler : SocketHandler
     private readonly HashSet<int> _creaturesRequested = new HashSet<int>();
     public Action<JObject> GenericEventHandler { get; set; }
     public String FileDownloadStatus { get { return _socketHandler.CurrentStatus; } }
+    public SectorCache SectorCache { get; private set; }
 
     private readonly FileTransferringSocketReciever _socketHandler;
 
@@ -22,6 +23,7 @@ public ConnectionToGridiaServerHandler(String host, int port, GridiaGame game)
     {
         _socketHandler = new FileTransferringSocketReciever(new SocketHandlerImpl(host, port), GridiaConstants.GetFileSystem());
         _game = game;
+        SectorCache = new SectorCache();
     }
 
     public void Start(Action onConnectionSettled, SocketHandler topLevelSocketHandler)
@@ -57,6 +59,17 @@ public long getSystemTime()
 
     //outbound
 
+    // answers what Initialize offered with the versions understood, or 0: see Protocol.Binary and Protocol.SectorDataCompact
+    public void Capabilities(int binaryMessages, int compactSectors)
+    {
+        var message = new JsonMessageBuilder()
+            .Type("Capabilities")
+            .Set("binaryMessages", binaryMessages)
+            .Set("compactSectors", compactSectors)
+            .Build();
+        _socketHandler.Send(message);
+    }
+
     public void PlayerMove(Vector3 loc, bool onRaft, int timeForMovement)
     {
         var message = new JsonMessageBuilder()
@@ -76,13 +89,23 @@ public void SectorRequest(int x, int y, int z)
         }
         _sectorsRequested.Add(new Vector3(x, y, z));
 
-        var message = new JsonMessageBuilder()
+        var builder = new JsonMessageBuilder()
             .Type("SectorRequest")
             .Set("x", x)
             .Set("y", y)
-            .Set("z", z)
-            .Build();
-        _socketHandler.Send(message);
+            .Set("z", z);
+        var hash = SectorCache.GetHash(x, y, z);
+        if (hash != null)
+        {
+            builder.Set("hash", hash);
+        }
+        _socketHandler.Send(builder.Build());
+    }
+
+    // lets the sector be requested again once it comes back into view
+    public void ForgetSectorRequest(int x, int y, int z)
+    {
+        _sectorsRequested.Remove(new Vector3(x, y, z));
     }
 
     public void CreatureRequest(int id)
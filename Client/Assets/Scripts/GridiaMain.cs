@@ -97,6 +97,27 @@ public void RemoveCreature(int id)
         if (_driver.SelectedCreature != null && _driver.SelectedCreature.Id == id) _driver.SelectedCreature = null;
     }
 
+    // the server stops sending updates for sectors out of view, so forget what was in them
+    public void UnloadSector(int sx, int sy, int sz)
+    {
+        var sector = TileMap.GetSector(sx, sy, sz);
+        if (sector != null)
+        {
+            // keep it with the tile updates since it arrived, to match the server's copy next time
+            Locator.Get<ConnectionToGridiaServerHandler>().SectorCache.Store(sx, sy, sz, sector, TileMap.SectorSize);
+        }
+        TileMap.SetSector(null, sx, sy, sz);
+        var sectorSize = TileMap.SectorSize;
+        TileMap.Creatures.ValuesToList().ForEach(cre =>
+        {
+            var pos = cre.Position;
+            if (cre.Id != View.FocusId && (int) pos.x / sectorSize == sx && (int) pos.y / sectorSize == sy && (int) pos.z == sz)
+            {
+                RemoveCreature(cre.Id);
+            }
+        });
+    }
+
     // :(
     public void InitAdminWindowTab()
     {
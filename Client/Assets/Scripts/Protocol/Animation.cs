@@ -8,12 +8,16 @@ class Animation : JsonMessageHandler<ConnectionToGridiaServerHandler>
     {
         protected override void Handle(ConnectionToGridiaServerHandler connection, JObject data)
         {
-            var game = connection.GetGame();
             var name = (string)data["name"];
             var x = (int)data["loc"]["x"];
             var y = (int)data["loc"]["y"];
             var z = (int)data["loc"]["z"];
+            Apply(connection, name, x, y, z);
+        }
 
+        public static void Apply(ConnectionToGridiaServerHandler connection, string name, int x, int y, int z)
+        {
+            var game = connection.GetGame();
             if (game.View.Focus == null || z == game.View.Focus.Position.z)
             {
                 var coord = new Vector3(x, y, z);
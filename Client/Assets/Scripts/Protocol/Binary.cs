@@ -0,0 +1,76 @@
+﻿using Serving;
+using System;
+
+namespace Gridia.Protocol
+{
+    // a run of messages in their binary form, each an opcode followed by its fields
+    class Binary : BinaryMessageHandler<ConnectionToGridiaServerHandler>
+    {
+        public const int VERSION = 1;
+
+        protected override void Handle(ConnectionToGridiaServerHandler connection, JavaBinaryReader data)
+        {
+            var stream = data.BaseStream;
+            while (stream.Position < stream.Length)
+            {
+                var opcode = data.ReadVarInt();
+                switch (opcode)
+                {
+                    case 1:
+                        {
+                            var id = data.ReadVarInt();
+                            var x = data.ReadVarInt();
+                            var y = data.ReadVarInt();
+                            var z = data.ReadVarInt();
+                            var time = data.ReadVarLong() - Creature.RENDER_DELAY;
+                            var flags = data.ReadVarInt();
+                            MoveCreature.Apply(connection, id, x, y, z, time, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0);
+                            break;
+                        }
+                    case 2:
+                        {
+                            var x = data.ReadVarInt();
+                            var y = data.ReadVarInt();
+                            var z = data.ReadVarInt();
+                            var item = data.ReadVarInt();
+                            var quantity = data.ReadVarInt();
+                            var floor = data.ReadVarInt();
+                            TileUpdate.Apply(connection, x, y, z, item, quantity, floor);
+                            break;
+                        }
+                    case 3:
+                        {
+                            var id = data.ReadVarInt();
+                            var currentHealth = data.ReadSignedVarInt();
+                            var maxHealth = data.ReadSignedVarInt();
+                            SetLife.Apply(id, currentHealth, maxHealth);
+                            break;
+                        }
+                    case 4:
+                        {
+                            var name = data.ReadString();
+                            var x = data.ReadVarInt();
+                            var y = data.ReadVarInt();
+                            var z = data.ReadVarInt();
+                            Animation.Apply(connection, name, x, y, z);
+                            break;
+                        }
+                    case 5:
+                        {
+                            var id = data.ReadVarInt();
+                            var index = data.ReadVarInt();
+                            var item = data.ReadVarInt();
+                            var quantity = data.ReadVarInt();
+                            ContainerUpdate.Apply(id, index, item, quantity);
+                            break;
+                        }
+                    case 6:
+                        RemoveCreature.Apply(connection, data.ReadVarInt());
+                        break;
+                    default:
+                        throw new Exception("No such binary message: " + opcode);
+                }
+            }
+        }
+    }
+}
@@ -11,7 +11,11 @@ protected override void Handle(ConnectionToGridiaServerHandler connection, JObje
             var index = (int) data["index"];
             var item = (int) data["item"];
             var quantity = (int) data["quantity"];
+            Apply(id, index, item, quantity);
+        }
 
+        public static void Apply(int id, int index, int item, int quantity)
+        {
             var itemInstance = Locator.Get<ContentManager>().GetItem(item).GetInstance(quantity);
             var container = Locator.Get<GridiaDriver>().GetOpenContainerWithId(id);
             if (container != null) 
@@ -13,6 +13,12 @@ protected override void Handle(ConnectionToGridiaServerHandler connection, JObje
             GridiaConstants.Depth = (int)data["depth"];
             GridiaConstants.SectorSize = (int)data["sectorSize"];
             GridiaConstants.ServerTimeOffset = connection.getSystemTime() - (long)data["time"];
+            var binaryMessages = data["binaryMessages"] != null && (int)data["binaryMessages"] == Binary.VERSION;
+            var compactSectors = data["compactSectors"] != null && (int)data["compactSectors"] == SectorDataCompact.VERSION;
+            if (binaryMessages || compactSectors)
+            {
+                connection.Capabilities(binaryMessages ? Binary.VERSION : 0, compactSectors ? SectorDataCompact.VERSION : 0);
+            }
             
             if (!GridiaConstants.Version.Equals((String)data["version"]))
             {
@@ -7,7 +7,6 @@ class MoveCreature : JsonMessageHandler<ConnectionToGridiaServerHandler>
     {
         protected override void Handle(ConnectionToGridiaServerHandler connection, JObject data)
         {
-            var game = connection.GetGame();
             var id = (int) data["id"];
             var x = (int) data["loc"]["x"];
             var y = (int) data["loc"]["y"];
@@ -16,7 +15,12 @@ protected override void Handle(ConnectionToGridiaServerHandler connection, JObje
             var isTeleport = (bool) data["isTeleport"];
             var onRaft = (bool)data["onRaft"];
             var tellMover = (bool)data["tellMover"];
+            Apply(connection, id, x, y, z, time, isTeleport, onRaft, tellMover);
+        }
 
+        public static void Apply(ConnectionToGridiaServerHandler connection, int id, int x, int y, int z, long time, bool isTeleport, bool onRaft, bool tellMover)
+        {
+            var game = connection.GetGame();
             if (tellMover || id != game.View.FocusId || isTeleport)
             {
                 game.TileMap.MoveCreature(id, x, y, z, onRaft, time);
@@ -8,7 +8,11 @@ class RemoveCreature : JsonMessageHandler<ConnectionToGridiaServerHandler>
         protected override void Handle(ConnectionToGridiaServerHandler connection, JObject data)
         {
             var id = (int) data["id"];
+            Apply(connection, id);
+        }
 
+        public static void Apply(ConnectionToGridiaServerHandler connection, int id)
+        {
             connection.GetGame().RemoveCreature(id);
         }
     }
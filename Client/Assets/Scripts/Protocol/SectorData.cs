@@ -25,8 +25,15 @@ protected override void Handle(ConnectionToGridiaServerHandler connection, JavaB
                     tiles[x, y] = tile;
                 }
             }
-            game.TileMap.SetSector(new Sector(tiles), sx, sy, sz);
+            var sector = new Sector(tiles);
+            game.TileMap.SetSector(sector, sx, sy, sz);
+            connection.SectorCache.Store(sx, sy, sz, sector, sectorSize);
 
+            ReadCreatures(game, data);
+        }
+
+        public static void ReadCreatures(GridiaGame game, JavaBinaryReader data)
+        {
             var numCreatures = data.ReadInt32();
             for (var i = 0; i < numCreatures; i++)
             {
@@ -0,0 +1,48 @@
+﻿using Serving;
+
+namespace Gridia.Protocol
+{
+    // SectorData with floors as runs and only the tiles that have an item
+    class SectorDataCompact : BinaryMessageHandler<ConnectionToGridiaServerHandler>
+    {
+        public const int VERSION = 1;
+
+        protected override void Handle(ConnectionToGridiaServerHandler connection, JavaBinaryReader data)
+        {
+            var game = connection.GetGame();
+            var sx = data.ReadVarInt();
+            var sy = data.ReadVarInt();
+            var sz = data.ReadVarInt();
+            var sectorSize = game.TileMap.SectorSize;
+            var area = sectorSize * sectorSize;
+            var tiles = new Tile[sectorSize, sectorSize];
+            var cm = Locator.Get<ContentManager>();
+
+            for (var i = 0; i < area;)
+            {
+                var runLength = data.ReadVarInt();
+                var floor = data.ReadVarInt();
+                for (var end = i + runLength; i < end; i++)
+                {
+                    tiles[i / sectorSize, i % sectorSize] = new Tile {Floor = floor, Item = cm.GetItem(0).GetInstance(0)};
+                }
+            }
+
+            var numItems = data.ReadVarInt();
+            var index = -1;
+            for (var i = 0; i < numItems; i++)
+            {
+                index += data.ReadVarInt() + 1;
+                var itemType = data.ReadVarInt();
+                var itemQuantity = data.ReadVarInt();
+                tiles[index / sectorSize, index % sectorSize].Item = cm.GetItem(itemType).GetInstance(itemQuantity);
+            }
+
+            var sector = new Sector(tiles);
+            game.TileMap.SetSector(sector, sx, sy, sz);
+            connection.SectorCache.Store(sx, sy, sz, sector, sectorSize);
+
+            SectorData.ReadCreatures(game, data);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+﻿using Serving;
+
+namespace Gridia.Protocol
+{
+    // the tiles that changed since the copy the client sent the hash of
+    class SectorDelta : BinaryMessageHandler<ConnectionToGridiaServerHandler>
+    {
+        protected override void Handle(ConnectionToGridiaServerHandler connection, JavaBinaryReader data)
+        {
+            var game = connection.GetGame();
+            var sx = data.ReadInt32();
+            var sy = data.ReadInt32();
+            var sz = data.ReadInt32();
+            var sectorSize = game.TileMap.SectorSize;
+            var tiles = connection.SectorCache.Load(sx, sy, sz, sectorSize);
+            if (tiles == null)
+            {
+                // the copy is gone, so ask for all of it
+                connection.SectorCache.Forget(sx, sy, sz);
+                connection.ForgetSectorRequest(sx, sy, sz);
+                connection.SectorRequest(sx, sy, sz);
+                return;
+            }
+            var cm = Locator.Get<ContentManager>();
+
+            var numChanged = data.ReadInt32();
+            for (var i = 0; i < numChanged; i++)
+            {
+                var x = data.ReadInt16();
+                var y = data.ReadInt16();
+                var floor = data.ReadInt16();
+                var itemType = data.ReadInt16();
+                var itemQuantity = data.ReadInt16();
+                tiles[x, y] = new Tile {Floor = floor, Item = cm.GetItem(itemType).GetInstance(itemQuantity)};
+            }
+            var sector = new Sector(tiles);
+            game.TileMap.SetSector(sector, sx, sy, sz);
+            if (numChanged != 0)
+            {
+                connection.SectorCache.Store(sx, sy, sz, sector, sectorSize);
+            }
+
+            SectorData.ReadCreatures(game, data);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+﻿using Newtonsoft.Json.Linq;
+using Serving;
+
+namespace Gridia.Protocol
+{
+    class SectorUnload : JsonMessageHandler<ConnectionToGridiaServerHandler>
+    {
+        protected override void Handle(ConnectionToGridiaServerHandler connection, JObject data)
+        {
+            var sx = (int) data["x"];
+            var sy = (int) data["y"];
+            var sz = (int) data["z"];
+
+            connection.ForgetSectorRequest(sx, sy, sz);
+            connection.GetGame().UnloadSector(sx, sy, sz);
+        }
+    }
+}
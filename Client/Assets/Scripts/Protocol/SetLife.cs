@@ -11,7 +11,11 @@ protected override void Handle(ConnectionToGridiaServerHandler connection, JObje
             var id = (int)data["id"];
             var currentHealth = (int)data["currentLife"];
             var maxHealth = (int)data["maxLife"];
+            Apply(id, currentHealth, maxHealth);
+        }
 
+        public static void Apply(int id, int currentHealth, int maxHealth)
+        {
             MainThreadQueue.Add(() =>
             {
                 var cre = GameObject.Find("Creature " + id);
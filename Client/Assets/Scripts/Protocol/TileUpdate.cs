@@ -7,14 +7,18 @@ class TileUpdate : JsonMessageHandler<ConnectionToGridiaServerHandler>
     {
         protected override void Handle(ConnectionToGridiaServerHandler connection, JObject data)
         {
-            var game = connection.GetGame();
             var item = (int)data["item"];
             var quantity = (int)data["quantity"];
             var floor = (int)data["floor"];
             var x = (int)data["loc"]["x"];
             var y = (int)data["loc"]["y"];
             var z = (int)data["loc"]["z"];
+            Apply(connection, x, y, z, item, quantity, floor);
+        }
 
+        public static void Apply(ConnectionToGridiaServerHandler connection, int x, int y, int z, int item, int quantity, int floor)
+        {
+            var game = connection.GetGame();
             game.TileMap.SetItem(Locator.Get<ContentManager>().GetItem(item).GetInstance(quantity), x, y, z);
             game.TileMap.SetFloor(floor, x, y, z);
         }
@@ -0,0 +1,108 @@
+﻿using Serving;
+using Serving.FileTransferring;
+using System;
+using System.Collections.Generic;
+using System.IO;
+using System.Security.Cryptography;
+
+namespace Gridia
+{
+    // the tiles of every sector seen, kept between sessions so the server only has to send what changed
+    public class SectorCache
+    {
+        private readonly FileSystem _fileSystem = GridiaConstants.GetFileSystem();
+        private readonly Dictionary<String, String> _hashes = new Dictionary<String, String>();
+
+        private String Folder()
+        {
+            return @"worlds/" + GridiaConstants.WorldName + @"/sectorcache"; // :(
+        }
+
+        private String PathOf(int sx, int sy, int sz)
+        {
+            return String.Format("{0}/{1}_{2}_{3}", Folder(), sx, sy, sz);
+        }
+
+        // of the tiles as the server sends them, or null if there is no copy
+        public String GetHash(int sx, int sy, int sz)
+        {
+            var path = PathOf(sx, sy, sz);
+            lock (_hashes)
+            {
+                String hash;
+                if (!_hashes.TryGetValue(path, out hash))
+                {
+                    hash = _fileSystem.Exists(path) ? Hash(_fileSystem.ReadAllBytes(path)) : null;
+                    _hashes[path] = hash;
+                }
+                return hash;
+            }
+        }
+
+        public Tile[,] Load(int sx, int sy, int sz, int sectorSize)
+        {
+            var path = PathOf(sx, sy, sz);
+            if (!_fileSystem.Exists(path))
+            {
+                return null;
+            }
+            var bytes = _fileSystem.ReadAllBytes(path);
+            if (bytes.Length != sectorSize * sectorSize * 6)
+            {
+                return null;
+            }
+            var data = new JavaBinaryReader(new MemoryStream(bytes));
+            var cm = Locator.Get<ContentManager>();
+            var tiles = new Tile[sectorSize, sectorSize];
+            for (var x = 0; x < sectorSize; x++)
+            {
+                for (var y = 0; y < sectorSize; y++)
+                {
+                    var floor = data.ReadInt16();
+                    var itemType = data.ReadInt16();
+                    var itemQuantity = data.ReadInt16();
+                    tiles[x, y] = new Tile {Floor = floor, Item = cm.GetItem(itemType).GetInstance(itemQuantity)};
+                }
+            }
+            return tiles;
+        }
+
+        public void Store(int sx, int sy, int sz, Sector sector, int sectorSize)
+        {
+            var stream = new MemoryStream(sectorSize * sectorSize * 6);
+            var data = new JavaBinaryWriter(stream);
+            for (var x = 0; x < sectorSize; x++)
+            {
+                for (var y = 0; y < sectorSize; y++)
+                {
+                    var tile = sector.GetTile(x, y);
+                    data.Write((short)tile.Floor);
+                    data.Write((short)tile.Item.Item.Id);
+                    data.Write((short)tile.Item.Quantity);
+                }
+            }
+            data.Flush();
+            var bytes = stream.ToArray();
+            var path = PathOf(sx, sy, sz);
+            lock (_hashes)
+            {
+                _fileSystem.CreateDirectory(Folder());
+                _fileSystem.Write(path, bytes);
+                _hashes[path] = Hash(bytes);
+            }
+        }
+
+        public void Forget(int sx, int sy, int sz)
+        {
+            lock (_hashes)
+            {
+                _hashes[PathOf(sx, sy, sz)] = null;
+            }
+        }
+
+        private static String Hash(byte[] bytes)
+        {
+            return BitConverter.ToString(MD5.Create().ComputeHash(bytes)).Replace("-", "").ToLowerInvariant();
+        }
+    }
+}
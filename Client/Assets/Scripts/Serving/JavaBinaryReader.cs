@@ -16,5 +16,37 @@ public string ReadJavaUTF()
             byte[] chars = ReadBytes(len);
             return Encoding.UTF8.GetString(chars);
         }
+
+        public long ReadVarLong()
+        {
+            long value = 0;
+            for (var shift = 0; ; shift += 7)
+            {
+                var b = ReadByte();
+                value |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+        }
+
+        public int ReadVarInt()
+        {
+            return (int)ReadVarLong();
+        }
+
+        // zigzagged, so small negative numbers stay small
+        public int ReadSignedVarInt()
+        {
+            var value = (uint)ReadVarLong();
+            return (int)(value >> 1) ^ -(int)(value & 1);
+        }
+
+        public string ReadString()
+        {
+            var len = ReadVarInt();
+            return Encoding.UTF8.GetString(ReadBytes(len));
+        }
     }
 }
@@ -45,6 +45,11 @@ public void SetSector(Sector sector, int x, int y, int z)
             _sectors[x, y, z] = sector;
         }
 
+        public Sector GetSector(int sx, int sy, int sz)
+        {
+            return _sectors[sx, sy, sz];
+        }
+
         public Sector GetSectorOf(int x, int y, int z) {
             x = Wrap(x);
             y = Wrap(y);
@@ -61,6 +61,7 @@ public class Entity {
     
     def propertyMissing(String name, value) {
         storage[name] = value
+        ServingGridia.instance?.attributeChanged(this, name, value)
     }
     
     def propertyMissing(String name) {
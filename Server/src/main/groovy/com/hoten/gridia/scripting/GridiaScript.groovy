@@ -6,7 +6,6 @@ import com.hoten.gridia.CustomPlayerImage
 import com.hoten.gridia.content.Item
 import com.hoten.gridia.map.Coord
 import com.hoten.gridia.content.Monster
-import java.util.concurrent.TimeUnit
 import java.util.logging.Level
 import java.util.logging.Logger
 
@@ -98,23 +97,38 @@ public class GridiaScript {
         }
         params.depth = params.depth ?: 1
         
-        def creatures = []
-        for (x in 0..<params.width) {
-            for (y in 0..<params.height) {
-                for (z in 0..<params.depth) {
-                    def loc = params.at.add(x, y, z)
-                    def cre = server.tileMap.getCreature(loc)
-                    if (cre != null) creatures += cre
-                }
-            }
-        }
-        creatures
+        server.tileMap.creatureIndex.findInArea(params.at, params.width, params.height, params.depth) { true }
     }
     
     def findPlayers(Map params) {
         findCreatures(params).findAll { it.belongsToPlayer }
     }
     
+    // in these queries range defaults to the view radius, but a range of 0 is kept
+    def creaturesNear(Map params) {
+        params.near = params.near ?: entity.location
+        params.range = params.range != null ? params.range : server.viewRadius
+        params.where = params.where ?: { true }
+        
+        server.findCreaturesInRange(params.near, params.range, params.where)
+    }
+    
+    def nearestCreatures(Map params) {
+        params.near = params.near ?: entity.location
+        params.range = params.range != null ? params.range : server.viewRadius
+        params.count = params.count ?: 1
+        params.where = params.where ?: { true }
+        
+        server.findNearestCreatures(params.near, params.range, params.count, params.where)
+    }
+    
+    def playersNear(Map params) {
+        params.near = params.near ?: entity.location
+        params.range = params.range != null ? params.range : server.viewRadius
+        
+        server.findPlayersInRange(params.near, params.range)
+    }
+    
     def removeItemFrom(Map params) {
         def itemRemoved = server.contentManager.createItemInstance(params.itemId, 0)
         params.container.items.eachWithIndex { item, i ->
@@ -234,10 +248,15 @@ public class GridiaScript {
 
     def announce(Map params) {
         params.from = params.from ?: "WORLD"
-        params.at = params.at ?: (params.to ? params.to.location : loc(0, 0))
+        params.at = params.at ?: (params.to ? params.to.location : entity.location)
         
         if (params.to) {
             server.announce(params.from, params.message, params.at, params.to)
+        } else if (!params.at) {
+            // from nowhere in particular, so there is no one nearby to tell
+            server.announceToAll(params.from, params.message)
+        } else if (params.global) {
+            server.announceToAll(params.from, params.message, params.at)
         } else {
             server.announce(params.from, params.message, params.at)
         }
@@ -246,7 +265,11 @@ public class GridiaScript {
     def playAnimation(Map params) {
         params.at = params.at ?: entity.location
         
-        server.playAnimation(params.type, params.at)
+        if (params.global) {
+            server.playAnimationToAll(params.type, params.at)
+        } else {
+            server.playAnimation(params.type, params.at)
+        }
     }
     
     def alert(Map params) {
@@ -269,13 +292,13 @@ public class GridiaScript {
                 closure.call()
             } catch (ex) {
                 Logger.getLogger(GridiaScript.class.name).log(Level.SEVERE, null, ex);
-                announce(from: "SCRIPT EXECUTOR", message: "Script error: $ex")
+                announce(from: "SCRIPT EXECUTOR", message: "Script error: $ex", global: true)
                 future.cancel()
                 scheduledTasks -= future
             }
         }
         catching.delegate = this
-        def future = scheduler.scheduleAtFixedRate(catching, duration, duration, TimeUnit.MILLISECONDS)
+        def future = scriptExecutor.every(catching, duration)
         scheduledTasks += future
     }
     
@@ -1,13 +1,34 @@
 package com.hoten.gridia.scripting
 
+import com.hoten.gridia.VirtualThreads
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.LongBinaryOperator
 
 // Todo: catch exceptions
 class ScriptExecutor {
     def scripts = []
-    def scheduler = Executors.newScheduledThreadPool(10);
+    def scheduler
+    def callbacks // when set, every callbacks run here instead of on the scheduler's threads
+    def callbackCount = new AtomicLong()
+    def totalLateness = new AtomicLong()
+    def maxLateness = new AtomicLong()
     
-    public ScriptExecutor() {        
+    public ScriptExecutor() {
+        this(false)
+    }
+    
+    // with virtual threads, one thread keeps time and each callback gets a virtual thread
+    public ScriptExecutor(boolean virtualThreads) {
+        if (virtualThreads) {
+            scheduler = Executors.newScheduledThreadPool(1)
+            callbacks = VirtualThreads.newPerTaskExecutor("Script callback")
+        } else {
+            scheduler = Executors.newScheduledThreadPool(10)
+        }
+        
         def timeUnits = [
             /milliseconds?/ : 1,
             /seconds?/ : 1000,
@@ -39,11 +60,61 @@ class ScriptExecutor {
     
     def synchronized addScript(script) {
         scripts += script
-        script.metaClass.scheduler = scheduler
+        script.metaClass.scriptExecutor = this
         script.run()
         script.start()
     }
     
+    // a callback that is still running when it comes due again skips that turn
+    def every(Closure callback, long period) {
+        def firstDue = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(period)
+        def ticks = new AtomicLong()
+        def running = new AtomicBoolean()
+        def timed = {
+            def due = firstDue + TimeUnit.MILLISECONDS.toNanos(period) * ticks.getAndIncrement()
+            recordLateness(System.nanoTime() - due)
+            callback.call()
+        }
+        if (!callbacks) {
+            return scheduler.scheduleAtFixedRate(timed, period, period, TimeUnit.MILLISECONDS)
+        }
+        scheduler.scheduleAtFixedRate({
+            if (running.compareAndSet(false, true)) {
+                callbacks.execute {
+                    try {
+                        timed.call()
+                    } finally {
+                        running.set(false)
+                    }
+                }
+            } else {
+                ticks.incrementAndGet()
+            }
+        }, period, period, TimeUnit.MILLISECONDS)
+    }
+    
+    private def recordLateness(long nanos) {
+        callbackCount.incrementAndGet()
+        totalLateness.addAndGet(nanos)
+        maxLateness.accumulateAndGet(nanos, { a, b -> Math.max(a, b) } as LongBinaryOperator)
+    }
+    
+    // how long after they were due the every callbacks started
+    def latencyReport() {
+        def count = callbackCount.get()
+        def mean = count ? totalLateness.get() / count / 1e6 : 0
+        String.format("%d script callbacks on %s, late by %.2f ms on average, %.2f ms at most",
+            count, mode(), mean, maxLateness.get() / 1e6)
+    }
+    
+    private def mode() {
+        if (!callbacks) {
+            "a thread pool"
+        } else {
+            VirtualThreads.available ? "virtual threads" : "a thread each"
+        }
+    }
+    
     def synchronized removeScript(script) {
         scripts -= script
         script.end()
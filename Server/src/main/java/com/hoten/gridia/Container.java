@@ -7,6 +7,7 @@ import com.hoten.gridia.uniqueidentifiers.FileResourceUniqueIdentifiers;
 import com.hoten.gridia.uniqueidentifiers.UniqueIdentifiers;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +76,17 @@ public class Container {
             FileUtils.writeStringToFile(getFile(container.id), GridiaGson.get().toJson(container));
         }
 
+        // copies the item list, so it can be written while the original keeps changing
+        public Container snapshot(Container container) {
+            return new Container(container.id, container.type, new ArrayList<>(container.getItems()));
+        }
+
+        public List<Container> snapshotAll() {
+            return new ArrayList<>(_containers.values()).stream()
+                    .map(this::snapshot)
+                    .collect(Collectors.toList());
+        }
+
         public void saveAll() throws IOException {
             for (Container container : _containers.values()) {
                 save(container);
@@ -123,6 +135,7 @@ public class Container {
 
     public void set(int index, ItemInstance item) {
         _items.set(index, item);
+        ServingGridia.instance.containerSlotChanged(this, index); // :(
         updateSlot(index);
     }
 
@@ -114,6 +114,7 @@ public class GridiaServerDriver {
         File clientDataDir = new File(world, "clientdata");
         String localDataDirName = "worlds/" + world.getName() + "/clientdata";
         ServingGridia server = new ServingGridia(world, mapName, port, clientDataDir, localDataDirName);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown, "Server shutdown"));
         server.startServer();
         
         try {
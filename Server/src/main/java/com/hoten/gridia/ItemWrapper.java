@@ -14,6 +14,13 @@ public interface ItemWrapper {
 
     void changeWrappedItem(ItemInstance newItem);
 
+    /**
+     * Brings the age of a growing item up to date, for before it is copied.
+     * Only items on the map grow.
+     */
+    default void ageItem() {
+    }
+
     default boolean hasRights(ServingGridia server, Player player) {
         if (this instanceof ItemWrapper.WorldItemWrapper) {
             ItemWrapper.WorldItemWrapper worldWrapper = (ItemWrapper.WorldItemWrapper) this;
@@ -35,6 +42,11 @@ public interface ItemWrapper {
             _item = server.tileMap.getItem(location);
         }
 
+        @Override
+        public void ageItem() {
+            _server.tileMap.ageItem(_location);
+        }
+
         @Override
         public boolean addItemToSource(ItemInstance itemToAdd) {
             return _server.addItemNear(itemToAdd, _location, 6, true) != null;
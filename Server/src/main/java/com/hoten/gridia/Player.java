@@ -1,5 +1,7 @@
 package com.hoten.gridia;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.hoten.gridia.Container.ContainerType;
 import com.hoten.gridia.content.ItemInstance;
 import com.hoten.gridia.scripting.Entity;
@@ -142,8 +144,24 @@ public class Player {
         }
 
         public void save(Player player) throws IOException {
-            String json = GridiaGson.get().toJson(player.creature);
-            FileUtils.writeStringToFile(new File(_dir, player.getPlayerId() + ".json"), json);
+            write(player.getPlayerId(), toJson(player));
+        }
+
+        public String toJson(Player player) {
+            return GridiaGson.get().toJson(player.creature);
+        }
+
+        public boolean exists(int playerId) {
+            return new File(_dir, playerId + ".json").exists();
+        }
+
+        public JsonObject readJson(int playerId) throws IOException {
+            String json = FileUtils.readFileToString(new File(_dir, playerId + ".json"));
+            return new JsonParser().parse(json).getAsJsonObject();
+        }
+
+        public void write(int playerId, String json) throws IOException {
+            FileUtils.writeStringToFile(new File(_dir, playerId + ".json"), json);
         }
     }
 
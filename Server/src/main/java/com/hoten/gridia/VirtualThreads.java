@@ -0,0 +1,50 @@
+package com.hoten.gridia;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads, on JVMs that have them. The server is built for Java 8, so
+ * they are looked up by reflection; elsewhere this falls back to plain
+ * threads.
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_PER_TASK_EXECUTOR = findPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    private static Method findPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Runs every task on a new virtual thread, or failing that on a cached
+     * pool of daemon threads with the given name.
+     */
+    public static ExecutorService newPerTaskExecutor(String fallbackThreadName) {
+        if (isAvailable()) {
+            try {
+                return (ExecutorService) NEW_PER_TASK_EXECUTOR.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                // virtual threads may still be a preview feature on this JVM
+            }
+        }
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, fallbackThreadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
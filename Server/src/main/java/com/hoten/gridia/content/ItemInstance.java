@@ -93,6 +93,10 @@ public class ItemInstance {
         return _quantity;
     }
 
+    public boolean hasData() {
+        return _data != null && !_data.entrySet().isEmpty();
+    }
+
     public JsonObject getData() {
         if (_data == null) {
             _data = new JsonObject();
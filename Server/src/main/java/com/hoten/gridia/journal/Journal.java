@@ -0,0 +1,446 @@
+package com.hoten.gridia.journal;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the world changes made since the last checkpoint.
+ *
+ * Game threads queue records and return immediately. A single writer thread
+ * writes whatever has queued up and then fsyncs once for the whole batch
+ * (group commit). The log is split into numbered segments: a checkpoint
+ * rotates to a new segment, and once the checkpoint is on disk the older
+ * segments are deleted. Every record sets an absolute value, so replaying a
+ * record that the checkpoint already contains is harmless.
+ *
+ * If a batch can't be written, the journal fails: sync throws and further
+ * records are refused. The next rotation starts a fresh segment and ends the
+ * failure, since the checkpoint taken after it covers what was lost.
+ *
+ * segment: magic, version, map name
+ * record: payload length (int), type (byte), payload, crc32 of type and payload (int)
+ */
+public class Journal implements Closeable {
+
+    public interface Replayer {
+
+        void itemChanged(int tileIndex, ItemInstance item);
+
+        void floorChanged(int tileIndex, int floor);
+
+        void containerSlotChanged(int containerId, int slot, ItemInstance item);
+
+        /**
+         * @param value the attribute as stored in player files, or null if it
+         * was removed
+         */
+        void playerAttributeChanged(int playerId, String name, JsonObject value);
+    }
+
+    private static final int MAGIC = 0x474A4E4C; // "GJNL"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".journal";
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+
+    private static final byte ITEM = 1;
+    private static final byte FLOOR = 2;
+    private static final byte CONTAINER_SLOT = 3;
+    private static final byte PLAYER_ATTRIBUTE = 4;
+
+    // queued in between records, so they take effect in order
+    private static final byte[] ROTATE = new byte[0];
+    private static final byte[] CLOSE = new byte[0];
+
+    private final File _dir;
+    private final String _mapName;
+    private final ContentManager _contentManager;
+    private final BlockingQueue<byte[]> _queue = new LinkedBlockingQueue<>();
+    private final Thread _writer;
+    private final long _firstSegmentNumber;
+    private final Object _durableLock = new Object();
+    private FileChannel _segment; // only touched by the writer once it is running
+    private volatile long _segmentNumber;
+    private long _lastSegmentNumber; // guarded by _durableLock
+    private long _appended, _processed;
+    private IOException _failure; // guarded by _durableLock
+    private boolean _refusing; // guarded by _durableLock
+
+    /**
+     * Opens the journal in dir. Records already in dir are left alone, so
+     * replay them before writing anything new.
+     */
+    public Journal(File dir, String mapName, ContentManager contentManager) throws IOException {
+        _dir = dir;
+        _mapName = mapName;
+        _contentManager = contentManager;
+        _dir.mkdirs();
+        List<Long> existing = listSegments();
+        _segmentNumber = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+        _lastSegmentNumber = _firstSegmentNumber = _segmentNumber + 1;
+        openSegment(_firstSegmentNumber);
+        _writer = new Thread(this::writeLoop, "Journal writer");
+        _writer.setDaemon(true); // close() is what flushes it, not the JVM waiting on it
+        _writer.start();
+    }
+
+    public void itemChanged(int tileIndex, ItemInstance item) {
+        append(ITEM, out -> {
+            out.writeInt(tileIndex);
+            writeItem(out, item);
+        });
+    }
+
+    public void floorChanged(int tileIndex, int floor) {
+        append(FLOOR, out -> {
+            out.writeInt(tileIndex);
+            out.writeShort(floor);
+        });
+    }
+
+    public void containerSlotChanged(int containerId, int slot, ItemInstance item) {
+        append(CONTAINER_SLOT, out -> {
+            out.writeInt(containerId);
+            out.writeShort(slot);
+            writeItem(out, item);
+        });
+    }
+
+    public void playerAttributeChanged(int playerId, String name, JsonObject value) {
+        append(PLAYER_ATTRIBUTE, out -> {
+            out.writeInt(playerId);
+            out.writeUTF(name);
+            writeBytes(out, value == null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    private interface Payload {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type);
+            payload.write(out);
+            out.writeInt(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // writing to memory
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int payloadLength = record.capacity() - 9;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, payloadLength + 1);
+        record.putInt(0, payloadLength);
+        record.putInt(record.capacity() - 4, (int) crc.getValue());
+        enqueue(record.array());
+    }
+
+    private synchronized void enqueue(byte[] record) {
+        synchronized (_durableLock) {
+            if (_refusing && record != CLOSE) {
+                return;
+            }
+            _appended++;
+        }
+        _queue.add(record);
+    }
+
+    private void writeItem(DataOutputStream out, ItemInstance item) throws IOException {
+        out.writeShort(item.getItem().id);
+        out.writeInt(item.getQuantity());
+        out.writeInt(item.age);
+        writeBytes(out, item.hasData() ? item.getData().toString().getBytes(StandardCharsets.UTF_8) : new byte[0]);
+    }
+
+    private void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        long segmentNumber = _firstSegmentNumber;
+        IOException failure = null;
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(_queue.take());
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            _queue.drainTo(batch);
+            for (byte[] record : batch) {
+                try {
+                    if (record == ROTATE) {
+                        segmentNumber++;
+                        if (failure == null) {
+                            _segment.force(false);
+                        }
+                        _segment.close();
+                        failure = null;
+                        openSegment(segmentNumber);
+                    } else if (record == CLOSE) {
+                        closing = true;
+                    } else if (failure == null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(record);
+                        while (buffer.hasRemaining()) {
+                            _segment.write(buffer);
+                        }
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(Journal.class.getName()).log(Level.SEVERE, "Could not write to the journal", ex);
+                    failure = ex;
+                }
+            }
+            if (failure == null) {
+                try {
+                    _segment.force(false);
+                } catch (IOException ex) {
+                    Logger.getLogger(Journal.class.getName()).log(Level.SEVERE, "Could not write to the journal", ex);
+                    failure = ex;
+                }
+            }
+            synchronized (_durableLock) {
+                _processed += batch.size();
+                _failure = failure;
+                // unless a rotation is already queued, which ends the failure
+                _refusing = failure != null && segmentNumber == _lastSegmentNumber;
+                _durableLock.notifyAll();
+            }
+            batch.clear();
+        }
+        try {
+            _segment.close();
+        } catch (IOException ex) {
+            Logger.getLogger(Journal.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Blocks until everything appended so far has been written and fsynced,
+     * or throws if the journal has failed by then.
+     */
+    public void sync() throws InterruptedException, IOException {
+        synchronized (_durableLock) {
+            long target = _appended;
+            while (_processed < target) {
+                _durableLock.wait();
+            }
+            if (_failure != null) {
+                throw new IOException("The journal could not be written", _failure);
+            }
+        }
+    }
+
+    /**
+     * Whether the last records written were lost. They are only in memory
+     * until the next checkpoint.
+     */
+    public boolean hasFailed() {
+        synchronized (_durableLock) {
+            return _failure != null;
+        }
+    }
+
+    /**
+     * Starts a new segment for the records appended after this call, and
+     * returns its number. Take the checkpoint after this, and once it is on
+     * disk, pass the number to deleteSegmentsBefore. Records are accepted
+     * again from here on, if the journal had failed.
+     */
+    public synchronized long rotate() {
+        long number;
+        synchronized (_durableLock) {
+            number = ++_lastSegmentNumber;
+            _refusing = false;
+        }
+        enqueue(ROTATE);
+        return number;
+    }
+
+    /**
+     * Deletes the segments older than segmentNumber. Never deletes the segment
+     * being written to, even if the writer hasn't rotated away from it yet.
+     */
+    public void deleteReplayedSegments() throws IOException {
+        deleteSegmentsBefore(_firstSegmentNumber);
+    }
+
+    public void deleteSegmentsBefore(long segmentNumber) throws IOException {
+        long limit = Math.min(segmentNumber, _segmentNumber);
+        for (long number : listSegments()) {
+            if (number < limit && !segmentFile(number).delete()) {
+                throw new IOException("Could not delete " + segmentFile(number));
+            }
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        _segment = FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(_mapName);
+        _segment.write(ByteBuffer.wrap(bytes.toByteArray()));
+        _segment.force(false);
+        _segmentNumber = number;
+    }
+
+    private File segmentFile(long number) {
+        return new File(_dir, String.format("%016d%s", number, EXTENSION));
+    }
+
+    private List<Long> listSegments() {
+        String[] names = _dir.list((dir, name) -> name.matches("\\d+" + EXTENSION.replace(".", "\\.")));
+        List<Long> numbers = new ArrayList<>();
+        for (String name : names == null ? new String[0] : names) {
+            numbers.add(Long.parseLong(name.substring(0, name.length() - EXTENSION.length())));
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * Replays the segments that existed when the journal was opened, oldest
+     * first, and returns how many records were replayed. A torn record at the
+     * end of a segment, left by a crash mid-write, ends that segment.
+     */
+    public int replay(Replayer replayer) throws IOException {
+        int count = 0;
+        for (long number : listSegments()) {
+            if (number < _firstSegmentNumber) {
+                count += replaySegment(segmentFile(number), replayer);
+            }
+        }
+        return count;
+    }
+
+    private int replaySegment(File file, Replayer replayer) throws IOException {
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                throw new IOException(file + " is not a journal segment this version can read");
+            }
+            boolean sameMap = _mapName.equals(in.readUTF());
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+                    record = new byte[length + 1];
+                    in.readFully(record);
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                replayRecord(record, sameMap, replayer);
+                count++;
+            }
+        } catch (EOFException ex) {
+            // the crash happened before the header made it to disk
+        }
+        return count;
+    }
+
+    private void replayRecord(byte[] record, boolean sameMap, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+        switch (record[0]) {
+            case ITEM: {
+                int tileIndex = in.readInt();
+                ItemInstance item = readItem(in);
+                if (sameMap) {
+                    replayer.itemChanged(tileIndex, item);
+                }
+                break;
+            }
+            case FLOOR: {
+                int tileIndex = in.readInt();
+                int floor = in.readShort();
+                if (sameMap) {
+                    replayer.floorChanged(tileIndex, floor);
+                }
+                break;
+            }
+            case CONTAINER_SLOT:
+                replayer.containerSlotChanged(in.readInt(), in.readUnsignedShort(), readItem(in));
+                break;
+            case PLAYER_ATTRIBUTE: {
+                int playerId = in.readInt();
+                String name = in.readUTF();
+                byte[] value = readBytes(in);
+                replayer.playerAttributeChanged(playerId, name, value.length == 0 ? null : parse(value));
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + record[0]);
+        }
+    }
+
+    private ItemInstance readItem(DataInputStream in) throws IOException {
+        int id = in.readUnsignedShort();
+        int quantity = in.readInt();
+        int age = in.readInt();
+        byte[] data = readBytes(in);
+        ItemInstance item = _contentManager.createItemInstance(id, quantity, data.length == 0 ? null : parse(data));
+        if (!item.isNothing()) {
+            item.age = age;
+        }
+        return item;
+    }
+
+    private byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private JsonObject parse(byte[] json) {
+        return new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    /**
+     * Writes out everything queued, then stops the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        enqueue(CLOSE);
+        try {
+            _writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
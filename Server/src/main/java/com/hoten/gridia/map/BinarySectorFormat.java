@@ -0,0 +1,141 @@
+package com.hoten.gridia.map;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary layout of a single sector.
+ *
+ * header: magic, version, sector size, sector owner
+ * tiles (x-major): floor (short), item id (unsigned short), quantity (int), owner (int)
+ * extras: count, then per entry the tile index, item age and item data (utf-8 json, may be empty)
+ *
+ * A uniform sector is written as just: uniform magic, sector size, floor
+ */
+final class BinarySectorFormat {
+
+    static final int MAGIC = 0x47534543; // "GSEC"
+    static final int VERSION = 1;
+    static final int UNIFORM_MAGIC = 0x4755534D; // "GUSM"
+
+    private BinarySectorFormat() {
+    }
+
+    static void write(Sector sector, DataOutput out) throws IOException {
+        int sectorSize = sector.getSectorSize();
+
+        int uniformFloor = sector.getUniformFloor();
+        if (uniformFloor != -1) {
+            out.writeInt(UNIFORM_MAGIC);
+            out.writeInt(sectorSize);
+            out.writeShort(uniformFloor);
+            return;
+        }
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(sectorSize);
+        out.writeInt(sector.getOwner());
+
+        int numExtras = 0;
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                ItemInstance item = sector.getItem(x, y);
+                out.writeShort(sector.getFloor(x, y));
+                out.writeShort(item.getItem().id);
+                out.writeInt(item.getQuantity());
+                out.writeInt(sector.getTileOwner(x, y));
+                if (hasExtras(item)) {
+                    numExtras++;
+                }
+            }
+        }
+
+        out.writeInt(numExtras);
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                ItemInstance item = sector.getItem(x, y);
+                if (hasExtras(item)) {
+                    out.writeInt(x * sectorSize + y);
+                    out.writeInt(item.age);
+                    byte[] json = item.hasData() ? item.getData().toString().getBytes(StandardCharsets.UTF_8) : new byte[0];
+                    out.writeInt(json.length);
+                    out.write(json);
+                }
+            }
+        }
+    }
+
+    static Sector read(DataInput in, int sectorSize, int sx, int sy, int sz, ContentManager contentManager) throws IOException {
+        int magic = in.readInt();
+        if (magic == UNIFORM_MAGIC) {
+            checkSectorSize(in.readInt(), sectorSize, sx, sy, sz);
+            return Sector.uniform(sectorSize, in.readShort(), sx, sy, sz);
+        }
+        if (magic != MAGIC) {
+            throw new IOException(String.format("Sector %d,%d,%d is not in the binary sector format", sx, sy, sz));
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException(String.format("Sector %d,%d,%d has unsupported format version %d", sx, sy, sz, version));
+        }
+        checkSectorSize(in.readInt(), sectorSize, sx, sy, sz);
+        int sectorOwner = in.readInt();
+
+        Sector sector = new Sector(sectorSize, sx, sy, sz);
+        int[] itemIds = new int[sectorSize * sectorSize];
+        int[] quantities = new int[sectorSize * sectorSize];
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                sector.setFloor(x, y, in.readShort());
+                itemIds[x * sectorSize + y] = in.readUnsignedShort();
+                quantities[x * sectorSize + y] = in.readInt();
+                sector.setTileOwner(x, y, in.readInt());
+            }
+        }
+
+        int[] ages = new int[sectorSize * sectorSize];
+        JsonObject[] datas = new JsonObject[sectorSize * sectorSize];
+        int numExtras = in.readInt();
+        for (int i = 0; i < numExtras; i++) {
+            int index = in.readInt();
+            ages[index] = in.readInt();
+            byte[] json = new byte[in.readInt()];
+            in.readFully(json);
+            if (json.length != 0) {
+                datas[index] = new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+            }
+        }
+
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                int index = x * sectorSize + y;
+                ItemInstance item = contentManager.createItemInstance(itemIds[index], quantities[index], datas[index]);
+                if (!item.isNothing()) {
+                    item.age = ages[index];
+                }
+                sector.setItem(x, y, item);
+            }
+        }
+
+        sector.setOwner(sectorOwner);
+        sector.markClean();
+        return sector;
+    }
+
+    private static void checkSectorSize(int storedSectorSize, int sectorSize, int sx, int sy, int sz) throws IOException {
+        if (storedSectorSize != sectorSize) {
+            throw new IOException(String.format("Sector %d,%d,%d has size %d, expected %d", sx, sy, sz, storedSectorSize, sectorSize));
+        }
+    }
+
+    private static boolean hasExtras(ItemInstance item) {
+        return !item.isNothing() && (item.age != 0 || item.hasData());
+    }
+}
@@ -0,0 +1,33 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ContentManager;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class BinarySectorLoader implements SectorLoader {
+
+    private final File _map;
+    private final ContentManager _contentManager;
+    private final SectorLoader _legacyLoader;
+
+    public BinarySectorLoader(File map, ContentManager contentManager) {
+        _map = map;
+        _contentManager = contentManager;
+        _legacyLoader = new JsonSectorLoader(map);
+    }
+
+    @Override
+    public Sector load(int sectorSize, int x, int y, int z) throws IOException {
+        File file = new File(_map, BinarySectorSaver.fileName(x, y, z));
+        if (!file.exists()) {
+            // maps switched over from json are converted as their sectors are saved
+            return _legacyLoader.load(sectorSize, x, y, z);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return BinarySectorFormat.read(in, sectorSize, x, y, z, _contentManager);
+        }
+    }
+}
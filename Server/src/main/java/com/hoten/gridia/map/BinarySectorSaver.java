@@ -0,0 +1,29 @@
+package com.hoten.gridia.map;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class BinarySectorSaver extends SectorSaver {
+
+    static String fileName(int x, int y, int z) {
+        return String.format("%d,%d,%d.sector", x, y, z);
+    }
+
+    private final File _map;
+
+    public BinarySectorSaver(File map) {
+        super(map);
+        _map = map;
+    }
+
+    @Override
+    public void save(Sector sector) throws IOException {
+        File file = new File(_map, fileName(sector.sx, sector.sy, sector.sz));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            BinarySectorFormat.write(sector, out);
+        }
+    }
+}
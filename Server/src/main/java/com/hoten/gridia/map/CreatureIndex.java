@@ -0,0 +1,117 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.scripting.Entity;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Buckets the creatures on the map by sector, so finding creatures near a
+ * spot only looks at the sectors that overlap the search area. Distances are
+ * in tiles along the longest axis, and wrap around the map's edges.
+ */
+public class CreatureIndex {
+
+    private final int _size, _depth, _sectorSize, _sectorsAcross;
+    private final Set<Entity>[] _buckets;
+
+    @SuppressWarnings("unchecked")
+    public CreatureIndex(int size, int depth, int sectorSize) {
+        _size = size;
+        _depth = depth;
+        _sectorSize = sectorSize;
+        _sectorsAcross = size / sectorSize;
+        _buckets = new Set[_sectorsAcross * _sectorsAcross * depth];
+        for (int i = 0; i < _buckets.length; i++) {
+            _buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    private Set<Entity> bucket(int x, int y, int z) {
+        int sx = Math.floorMod(x, _size) / _sectorSize;
+        int sy = Math.floorMod(y, _size) / _sectorSize;
+        return _buckets[(z * _sectorsAcross + sy) * _sectorsAcross + sx];
+    }
+
+    public void add(Entity cre, Coord loc) {
+        bucket(loc.x, loc.y, loc.z).add(cre);
+    }
+
+    public void remove(Entity cre, Coord loc) {
+        bucket(loc.x, loc.y, loc.z).remove(cre);
+    }
+
+    public int distance(Coord a, Coord b) {
+        return Math.max(wrappedDelta(a.x, b.x), wrappedDelta(a.y, b.y));
+    }
+
+    private int wrappedDelta(int a, int b) {
+        int delta = Math.floorMod(a - b, _size);
+        return Math.min(delta, _size - delta);
+    }
+
+    /**
+     * Creatures in the box starting at loc, matching the predicate.
+     */
+    public List<Entity> findInArea(Coord loc, int width, int height, int depth, Predicate<Entity> predicate) {
+        List<Entity> found = new ArrayList<>();
+        forSectorsOverlapping(loc.x, loc.y, loc.x + width - 1, loc.y + height - 1, loc.z, loc.z + depth - 1, bucket -> {
+            for (Entity cre : bucket) {
+                Coord at = cre.location;
+                if (Math.floorMod(at.x - loc.x, _size) < width && Math.floorMod(at.y - loc.y, _size) < height
+                        && at.z >= loc.z && at.z < loc.z + depth && predicate.test(cre)) {
+                    found.add(cre);
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Creatures on loc's level no further than radius from it, matching the
+     * predicate.
+     */
+    public List<Entity> findInRange(Coord loc, int radius, Predicate<Entity> predicate) {
+        List<Entity> found = new ArrayList<>();
+        forSectorsOverlapping(loc.x - radius, loc.y - radius, loc.x + radius, loc.y + radius, loc.z, loc.z, bucket -> {
+            for (Entity cre : bucket) {
+                if (cre.location.z == loc.z && distance(cre.location, loc) <= radius && predicate.test(cre)) {
+                    found.add(cre);
+                }
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Up to count creatures within radius of loc, nearest first.
+     */
+    public List<Entity> findNearest(Coord loc, int radius, int count, Predicate<Entity> predicate) {
+        List<Entity> found = findInRange(loc, radius, predicate);
+        found.sort(Comparator.comparingInt(cre -> distance(cre.location, loc)));
+        return found.size() > count ? new ArrayList<>(found.subList(0, count)) : found;
+    }
+
+    public List<Entity> findPlayersInRange(Coord loc, int radius) {
+        return findInRange(loc, radius, cre -> cre.getBoolean("belongsToPlayer"));
+    }
+
+    private void forSectorsOverlapping(int x0, int y0, int x1, int y1, int z0, int z1, Consumer<Set<Entity>> consumer) {
+        // boxes at least as wide as the map would visit its sectors twice
+        int sx0 = Math.floorDiv(x0, _sectorSize), sx1 = Math.floorDiv(x1, _sectorSize);
+        int sy0 = Math.floorDiv(y0, _sectorSize), sy1 = Math.floorDiv(y1, _sectorSize);
+        sx1 = Math.min(sx1, sx0 + _sectorsAcross - 1);
+        sy1 = Math.min(sy1, sy0 + _sectorsAcross - 1);
+        for (int z = Math.max(0, z0); z <= Math.min(_depth - 1, z1); z++) {
+            for (int sx = sx0; sx <= sx1; sx++) {
+                for (int sy = sy0; sy <= sy1; sy++) {
+                    consumer.accept(bucket(sx * _sectorSize, sy * _sectorSize, z));
+                }
+            }
+        }
+    }
+}
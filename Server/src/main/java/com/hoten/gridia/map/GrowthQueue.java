@@ -0,0 +1,110 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ItemInstance;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The growing items on loaded sectors, ordered by the tick they are due to
+ * grow on. An item ages by one each tick, but its age is only brought up to
+ * date when it is moved, saved or evicted, so a tick costs as much as the
+ * items that are due rather than the whole map.
+ *
+ * Items are tracked by the tile they are on, not by instance, because the
+ * same instance can be on a tile and in a container at once.
+ */
+public class GrowthQueue {
+
+    private static class Growth {
+
+        final ItemInstance item;
+        final Coord location;
+        final long dueTick;
+        long agedTick;
+
+        Growth(ItemInstance item, Coord location, long tick) {
+            this.item = item;
+            this.location = location;
+            dueTick = tick + Math.max(1, item.getItem().growthDelta - item.age);
+            agedTick = tick;
+        }
+    }
+
+    private final PriorityQueue<Growth> _due = new PriorityQueue<>(Comparator.comparingLong(growth -> growth.dueTick));
+    private final Map<Coord, Growth> _growing = new HashMap<>();
+    private long _tick;
+
+    public static boolean grows(ItemInstance item) {
+        return item.getItem().growthDelta != 0;
+    }
+
+    public synchronized void add(ItemInstance item, Coord location) {
+        Growth growing = _growing.get(location);
+        if (grows(item) && (growing == null || growing.item != item)) {
+            remove(location);
+            Growth growth = new Growth(item, location, _tick);
+            _growing.put(location, growth);
+            _due.add(growth);
+        }
+    }
+
+    // the entry in _due is dropped once it comes up
+    public synchronized void remove(Coord location) {
+        age(location);
+        _growing.remove(location);
+    }
+
+    /**
+     * Brings the age of the item growing on location up to date. Returns true
+     * if it changed.
+     */
+    public synchronized boolean age(Coord location) {
+        Growth growth = _growing.get(location);
+        if (growth == null || growth.agedTick == _tick) {
+            return false;
+        }
+        growth.item.age += _tick - growth.agedTick;
+        growth.agedTick = _tick;
+        return true;
+    }
+
+    /**
+     * Brings every age up to date, telling aged of where ages changed.
+     */
+    public synchronized void ageAll(Consumer<Coord> aged) {
+        _growing.values().forEach(growth -> {
+            if (age(growth.location)) {
+                aged.accept(growth.location);
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return _growing.size();
+    }
+
+    /**
+     * Advances one tick, and hands every item that is now fully grown to
+     * grow, outside of the queue's lock.
+     */
+    public void tick(BiConsumer<Coord, ItemInstance> grow) {
+        List<Growth> grown = new ArrayList<>();
+        synchronized (this) {
+            _tick++;
+            while (!_due.isEmpty() && _due.peek().dueTick <= _tick) {
+                Growth growth = _due.poll();
+                if (_growing.get(growth.location) == growth) {
+                    remove(growth.location);
+                    grown.add(growth);
+                }
+            }
+        }
+        grown.forEach(growth -> grow.accept(growth.location, growth.item));
+    }
+}
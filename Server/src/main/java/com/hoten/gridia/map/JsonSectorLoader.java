@@ -1,5 +1,6 @@
 package com.hoten.gridia.map;
 
+import com.google.gson.JsonObject;
 import com.hoten.gridia.serializers.GridiaGson;
 import java.io.File;
 import java.io.IOException;
@@ -17,7 +18,14 @@ public class JsonSectorLoader implements SectorLoader {
     public Sector load(int sectorSize, int x, int y, int z) throws IOException {
         File file = new File(_map, String.format("%d,%d,%d.json", x, y, z));
         String json = FileUtils.readFileToString(file);
+        if (json.startsWith("{")) {
+            JsonObject uniform = GridiaGson.get().fromJson(json, JsonObject.class);
+            return Sector.uniform(sectorSize, uniform.get("uniformFloor").getAsInt(), x, y, z);
+        }
         Tile[][] tiles = GridiaGson.get().fromJson(json, Tile[][].class);
-        return new Sector(tiles, x, y, z);
+        Sector sector = new Sector(tiles, x, y, z);
+        int uniformFloor = sector.getUniformFloor();
+        // older files spell uniform sectors out in full
+        return uniformFloor == -1 ? sector : Sector.uniform(sectorSize, uniformFloor, x, y, z);
     }
 }
@@ -0,0 +1,62 @@
+package com.hoten.gridia.map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.WorldContentLoader;
+import com.hoten.gridia.serializers.GridiaGson;
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+
+// Rewrites every sector of a map in another storage format, then points meta.json at it.
+public class MapConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: MapConverter <world directory> <map name> <json|binary|region>");
+            return;
+        }
+        File world = new File(args[0]);
+        ContentManager contentManager = new WorldContentLoader(world).load();
+        GridiaGson.initialize(contentManager, null);
+        convert(new File(world, "maps/" + args[1]), args[2], contentManager);
+    }
+
+    public static void convert(File map, String format, ContentManager contentManager) throws IOException {
+        JsonObject metaData = TileMap.readMetaData(map);
+        if (TileMap.getFormat(metaData).equals(format)) {
+            throw new IllegalArgumentException("Map is already stored as " + format);
+        }
+
+        TileMap source = TileMap.openMap(map, contentManager);
+        SectorSaver target = createSaver(map, format, source, contentManager);
+        try {
+            for (int x = 0; x < source.sectorsAcross; x++) {
+                for (int y = 0; y < source.sectorsAcross; y++) {
+                    for (int z = 0; z < source.depth; z++) {
+                        target.save(source.getSector(x, y, z));
+                    }
+                }
+            }
+        } finally {
+            target.close();
+        }
+
+        metaData.addProperty("format", format);
+        FileUtils.writeStringToFile(new File(map, "meta.json"), new Gson().toJson(metaData));
+    }
+
+    private static SectorSaver createSaver(File map, String format, TileMap source, ContentManager contentManager) throws IOException {
+        switch (format) {
+            case TileMap.FORMAT_JSON:
+                return new SectorSaver(map);
+            case TileMap.FORMAT_BINARY:
+                return new BinarySectorSaver(map);
+            case TileMap.FORMAT_REGION:
+                return new RegionSectorStore(map, source.sectorsAcross, source.depth, source.sectorSize, contentManager);
+            default:
+                throw new IllegalArgumentException("Unknown map format: " + format);
+        }
+    }
+}
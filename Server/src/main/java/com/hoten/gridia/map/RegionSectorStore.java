@@ -0,0 +1,204 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ContentManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps every sector of a map in a single file: a header, a memory mapped
+ * offset table with one entry per sector, and the sectors themselves in the
+ * binary sector format. A sector is rewritten in place when it still fits in
+ * its slot, otherwise it is moved to the smallest free slot that fits, or to
+ * the end of the file.
+ *
+ * The slot a sector moves out of is only reused after the next flush, since
+ * until then the table on disk may still point at it. Free slots aren't
+ * stored; they are the gaps between slots, found again on open.
+ */
+public class RegionSectorStore extends SectorSaver implements SectorLoader, Closeable {
+
+    public static final String FILE_NAME = "sectors.region";
+
+    private static final int MAGIC = 0x47524547; // "GREG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16; // offset (long), length (int), capacity (int)
+    private static final int SLOT_ALIGNMENT = 512;
+
+    private final int _sectorsAcross, _depth, _sectorSize;
+    private final ContentManager _contentManager;
+    private final SectorLoader _legacyLoader;
+    private final RandomAccessFile _file;
+    private final FileChannel _channel;
+    private final MappedByteBuffer _table;
+    private final TreeMap<Integer, Deque<Long>> _free = new TreeMap<>(); // offsets by capacity
+    private final List<long[]> _freed = new ArrayList<>(); // offset and capacity, since the last flush
+    private long _end;
+
+    public RegionSectorStore(File map, int sectorsAcross, int depth, int sectorSize, ContentManager contentManager) throws IOException {
+        super(map);
+        _sectorsAcross = sectorsAcross;
+        _depth = depth;
+        _sectorSize = sectorSize;
+        _contentManager = contentManager;
+        _legacyLoader = new BinarySectorLoader(map, contentManager);
+
+        File file = new File(map, FILE_NAME);
+        boolean isNew = !file.exists() || file.length() == 0;
+        _file = new RandomAccessFile(file, "rw");
+        _channel = _file.getChannel();
+        long tableEnd = HEADER_SIZE + (long) ENTRY_SIZE * sectorsAcross * sectorsAcross * depth;
+        _table = _channel.map(FileChannel.MapMode.READ_WRITE, 0, tableEnd);
+        if (isNew) {
+            _table.putInt(0, MAGIC);
+            _table.putShort(4, (short) VERSION);
+            _table.putInt(6, sectorsAcross);
+            _table.putInt(10, depth);
+            _table.putInt(14, sectorSize);
+        } else {
+            validateHeader(file);
+        }
+        _end = findFreeSlots(tableEnd);
+    }
+
+    // returns where the last slot ends
+    private long findFreeSlots(long tableEnd) {
+        TreeMap<Long, Integer> slots = new TreeMap<>();
+        for (int entry = HEADER_SIZE; entry < tableEnd; entry += ENTRY_SIZE) {
+            int capacity = _table.getInt(entry + 12);
+            if (capacity > 0) {
+                slots.put(_table.getLong(entry), capacity);
+            }
+        }
+        long position = tableEnd;
+        for (Map.Entry<Long, Integer> slot : slots.entrySet()) {
+            if (slot.getKey() > position) {
+                addFree(position, (int) (slot.getKey() - position));
+            }
+            position = Math.max(position, slot.getKey() + slot.getValue());
+        }
+        return position;
+    }
+
+    private void addFree(long offset, int capacity) {
+        _free.computeIfAbsent(capacity, key -> new ArrayDeque<>()).add(offset);
+    }
+
+    private long allocate(int capacity) {
+        Map.Entry<Integer, Deque<Long>> fit = _free.ceilingEntry(capacity);
+        if (fit == null) {
+            long offset = _end;
+            _end += capacity;
+            return offset;
+        }
+        long offset = fit.getValue().poll();
+        if (fit.getValue().isEmpty()) {
+            _free.remove(fit.getKey());
+        }
+        if (fit.getKey() > capacity) {
+            addFree(offset + capacity, fit.getKey() - capacity);
+        }
+        return offset;
+    }
+
+    private void validateHeader(File file) throws IOException {
+        if (_table.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a region file");
+        }
+        if (_table.getShort(4) != VERSION) {
+            throw new IOException(file + " has unsupported region version " + _table.getShort(4));
+        }
+        if (_table.getInt(6) != _sectorsAcross || _table.getInt(10) != _depth || _table.getInt(14) != _sectorSize) {
+            throw new IOException(file + " was written for different map dimensions");
+        }
+    }
+
+    private int entryPosition(int x, int y, int z) {
+        return HEADER_SIZE + ENTRY_SIZE * ((z * _sectorsAcross + y) * _sectorsAcross + x);
+    }
+
+    @Override
+    public Sector load(int sectorSize, int x, int y, int z) throws IOException {
+        ByteBuffer buffer;
+        synchronized (this) {
+            int entry = entryPosition(x, y, z);
+            long offset = _table.getLong(entry);
+            int length = _table.getInt(entry + 8);
+            if (length == 0) {
+                // not in the region yet, e.g. a map that is being switched over
+                return _legacyLoader.load(sectorSize, x, y, z);
+            }
+            buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (_channel.read(buffer, offset + buffer.position()) == -1) {
+                    throw new IOException(String.format("Region file is truncated at sector %d,%d,%d", x, y, z));
+                }
+            }
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        return BinarySectorFormat.read(in, sectorSize, x, y, z, _contentManager);
+    }
+
+    @Override
+    public void save(Sector sector) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinarySectorFormat.write(sector, new DataOutputStream(bytes));
+        write(sector.sx, sector.sy, sector.sz, ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private synchronized void write(int x, int y, int z, ByteBuffer data) throws IOException {
+        int entry = entryPosition(x, y, z);
+        long offset = _table.getLong(entry);
+        int capacity = _table.getInt(entry + 12);
+        int length = data.remaining();
+        if (length > capacity) {
+            if (capacity > 0) {
+                _freed.add(new long[]{offset, capacity});
+            }
+            capacity = roundUpToSlot(length + length / 4);
+            offset = allocate(capacity);
+        }
+        while (data.hasRemaining()) {
+            _channel.write(data, offset + data.position());
+        }
+        _table.putLong(entry, offset);
+        _table.putInt(entry + 8, length);
+        _table.putInt(entry + 12, capacity);
+    }
+
+    private int roundUpToSlot(int length) {
+        return (length + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        _table.force();
+        _channel.force(false);
+        for (long[] slot : _freed) {
+            addFree(slot[0], (int) slot[1]);
+        }
+        _freed.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        _channel.close();
+        _file.close();
+    }
+}
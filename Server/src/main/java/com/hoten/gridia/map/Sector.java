@@ -1,18 +1,96 @@
 package com.hoten.gridia.map;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.scripting.Entity;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import static com.hoten.gridia.map.Tile.OWNER_UNCLAIMED;
 
+/**
+ * Tiles are stored column-wise in flat arrays indexed x-major, rather than as
+ * one Tile object per tile. Empty tiles share ItemInstance.NONE, and the
+ * creature column is only allocated once a creature enters the sector.
+ *
+ * Uniform sectors (one floor everywhere, nothing else, like most of the
+ * underground) share the columns of a template until their first write.
+ */
 public class Sector {
 
+    private static final Map<Long, Sector> TEMPLATES = new ConcurrentHashMap<>();
+
+    /**
+     * A sector with the given floor everywhere and nothing on it.
+     */
+    public static Sector uniform(int sectorSize, int floor, int sx, int sy, int sz) {
+        Sector template = TEMPLATES.computeIfAbsent(((long) sectorSize << 32) | (floor & 0xffffffffL), key -> {
+            Sector sector = new Sector(sectorSize, -1, -1, -1);
+            Arrays.fill(sector._floors, (short) floor);
+            return sector;
+        });
+        return new Sector(template, sx, sy, sz);
+    }
+
     public final int sx, sy, sz;
-    public final Tile[][] _tiles;
+    private final int _sectorSize;
+    private short[] _floors;
+    private ItemInstance[] _items;
+    private int[] _owners;
+    private volatile boolean _shared; // the columns belong to a template until the first write
+    private volatile Entity[] _creatures;
     private int _owner;
+    private volatile boolean _dirty;
+    private boolean _evicted; // guarded by this
+    private final AtomicInteger _version = new AtomicInteger();
+    long _lastAccess;
 
-    public Sector(Tile[][] tiles, int sx, int sy, int sz) {
-        _tiles = tiles;
+    public Sector(int sectorSize, int sx, int sy, int sz) {
+        this.sx = sx;
+        this.sy = sy;
+        this.sz = sz;
+        _sectorSize = sectorSize;
+        _floors = new short[sectorSize * sectorSize];
+        _items = new ItemInstance[sectorSize * sectorSize];
+        _owners = new int[sectorSize * sectorSize];
+        Arrays.fill(_items, ItemInstance.NONE);
+    }
+
+    private Sector(Sector template, int sx, int sy, int sz) {
         this.sx = sx;
         this.sy = sy;
         this.sz = sz;
+        _sectorSize = template._sectorSize;
+        _floors = template._floors;
+        _items = template._items;
+        _owners = template._owners;
+        _shared = true;
+    }
+
+    public Sector(Tile[][] tiles, int sx, int sy, int sz) {
+        this(tiles.length, sx, sy, sz);
+        for (int x = 0; x < _sectorSize; x++) {
+            for (int y = 0; y < _sectorSize; y++) {
+                Tile tile = tiles[x][y];
+                int index = index(x, y);
+                _floors[index] = (short) tile.floor;
+                _items[index] = tile.item;
+                _owners[index] = tile.getOwner();
+                if (tile.cre != null) {
+                    setCreature(x, y, tile.cre);
+                }
+            }
+        }
+    }
+
+    private int index(int x, int y) {
+        return x * _sectorSize + y;
+    }
+
+    public int getSectorSize() {
+        return _sectorSize;
     }
 
     public boolean isUnclaimed() {
@@ -24,10 +102,217 @@ public class Sector {
     }
 
     public void setOwner(int owner) {
-        _owner = owner;
+        if (_owner != owner) {
+            _owner = owner;
+            _dirty = true;
+        }
+    }
+
+    /**
+     * True if the sector has changed since it was last loaded or saved.
+     */
+    public boolean isDirty() {
+        return _dirty;
+    }
+
+    public void markDirty() {
+        _dirty = true;
+    }
+
+    void markClean() {
+        _dirty = false;
+    }
+
+    /**
+     * True once the map has dropped this sector. Changes to it after that are
+     * lost, so check this while holding the sector's lock.
+     */
+    synchronized boolean isEvicted() {
+        return _evicted;
+    }
+
+    void markEvicted() {
+        _evicted = true;
+    }
+
+    /**
+     * Bumped on every change to what a client is sent of the sector: floors,
+     * items, and the creatures standing on it.
+     */
+    public int getVersion() {
+        return _version.get();
+    }
+
+    public void bumpVersion() {
+        _version.incrementAndGet();
+    }
+
+    public int getFloor(int x, int y) {
+        return _floors[index(x, y)];
+    }
+
+    public void setFloor(int x, int y, int floor) {
+        if (_shared) {
+            if (getFloor(x, y) == floor) {
+                return;
+            }
+            unshare();
+        }
+        _floors[index(x, y)] = (short) floor;
+        bumpVersion();
+    }
+
+    public ItemInstance getItem(int x, int y) {
+        return _items[index(x, y)];
+    }
+
+    public void setItem(int x, int y, ItemInstance item) {
+        if (_shared) {
+            if (getItem(x, y) == item) {
+                return;
+            }
+            unshare();
+        }
+        _items[index(x, y)] = item;
+        bumpVersion();
+    }
+
+    public int getTileOwner(int x, int y) {
+        return _owners[index(x, y)];
+    }
+
+    public void setTileOwner(int x, int y, int owner) {
+        if (_shared) {
+            if (getTileOwner(x, y) == owner) {
+                return;
+            }
+            unshare();
+        }
+        _owners[index(x, y)] = owner;
+        markDirty();
+    }
+
+    private synchronized void unshare() {
+        if (_shared) {
+            _floors = _floors.clone();
+            _items = _items.clone();
+            _owners = _owners.clone();
+            _shared = false;
+        }
+    }
+
+    /**
+     * The floor covering the whole sector if nothing else is on it, or -1.
+     * Such sectors are stored as just that floor.
+     */
+    public int getUniformFloor() {
+        if (!isUnclaimed() || hasCreatures()) {
+            return -1;
+        }
+        int floor = _floors[0];
+        if (_shared) {
+            return floor;
+        }
+        for (int i = 0; i < _floors.length; i++) {
+            if (_floors[i] != floor || !_items[i].isNothing() || _owners[i] != OWNER_UNCLAIMED) {
+                return -1;
+            }
+        }
+        return floor;
+    }
+
+    public boolean isTileUnclaimed(int x, int y) {
+        return getTileOwner(x, y) == OWNER_UNCLAIMED;
+    }
+
+    public Entity getCreature(int x, int y) {
+        Entity[] creatures = _creatures;
+        return creatures == null ? null : creatures[index(x, y)];
+    }
+
+    public void setCreature(int x, int y, Entity cre) {
+        Entity[] creatures = _creatures;
+        if (creatures == null) {
+            if (cre == null) {
+                return;
+            }
+            creatures = createCreatureColumn();
+        }
+        creatures[index(x, y)] = cre;
+        bumpVersion();
+    }
+
+    private synchronized Entity[] createCreatureColumn() {
+        if (_creatures == null) {
+            _creatures = new Entity[_sectorSize * _sectorSize];
+        }
+        return _creatures;
+    }
+
+    public boolean hasCreatures() {
+        Entity[] creatures = _creatures;
+        if (creatures != null) {
+            for (Entity cre : creatures) {
+                if (cre != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A copy that later changes to this sector won't show up in. Items are
+     * immutable apart from their age and data, so only items carrying either
+     * are copied. A sector still sharing its template shares it with the copy.
+     */
+    public Sector snapshot() {
+        Sector copy = copyOfShared();
+        if (copy == null) {
+            copy = new Sector(_sectorSize, sx, sy, sz);
+            System.arraycopy(_floors, 0, copy._floors, 0, _floors.length);
+            System.arraycopy(_owners, 0, copy._owners, 0, _owners.length);
+            for (int i = 0; i < _items.length; i++) {
+                copy._items[i] = snapshot(_items[i]);
+            }
+        }
+        Entity[] creatures = _creatures;
+        if (creatures != null) {
+            copy._creatures = creatures.clone();
+        }
+        copy._owner = _owner;
+        return copy;
+    }
+
+    private synchronized Sector copyOfShared() {
+        return _shared ? new Sector(this, sx, sy, sz) : null;
+    }
+
+    private static ItemInstance snapshot(ItemInstance item) {
+        if (item.isNothing() || (item.age == 0 && !item.hasData())) {
+            return item;
+        }
+        JsonObject data = item.hasData() ? new JsonParser().parse(item.getData().toString()).getAsJsonObject() : null;
+        ItemInstance copy = new ItemInstance(item.getItem(), item.getQuantity(), data);
+        copy.age = item.age;
+        return copy;
     }
 
-    public Tile getTile(int x, int y) {
-        return _tiles[x][y];
+    /**
+     * Copies the sector out as Tile objects, for the json sector format.
+     */
+    public Tile[][] toTiles() {
+        Tile[][] tiles = new Tile[_sectorSize][_sectorSize];
+        for (int x = 0; x < _sectorSize; x++) {
+            for (int y = 0; y < _sectorSize; y++) {
+                Tile tile = new Tile();
+                tile.floor = getFloor(x, y);
+                tile.item = getItem(x, y);
+                tile.cre = getCreature(x, y);
+                tile.setOwner(getTileOwner(x, y));
+                tiles[x][y] = tile;
+            }
+        }
+        return tiles;
     }
 }
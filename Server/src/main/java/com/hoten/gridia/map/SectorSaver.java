@@ -14,8 +14,21 @@ public class SectorSaver {
     }
 
     public void save(Sector sector) throws IOException {
-        String json = GridiaGson.get().toJson(sector._tiles);
+        int uniformFloor = sector.getUniformFloor();
+        String json = uniformFloor != -1
+                ? String.format("{\"uniformFloor\":%d}", uniformFloor)
+                : GridiaGson.get().toJson(sector.toTiles());
         File file = new File(_map, String.format("%d,%d,%d.json", sector.sx, sector.sy, sector.sz));
         FileUtils.writeStringToFile(file, json);
     }
+
+    /**
+     * Makes the sectors saved so far durable. A file per sector needs
+     * nothing more.
+     */
+    public void flush() throws IOException {
+    }
+
+    public void close() throws IOException {
+    }
 }
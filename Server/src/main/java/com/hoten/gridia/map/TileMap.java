@@ -3,12 +3,30 @@ package com.hoten.gridia.map;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.hoten.gridia.Player;
+import com.hoten.gridia.content.ContentManager;
 import com.hoten.gridia.content.ItemInstance;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import com.hoten.gridia.scripting.Entity;
@@ -16,25 +34,66 @@ import org.apache.commons.io.FileUtils;
 
 public class TileMap {
 
-    public static TileMap loadMap(File world, String mapName) throws IOException {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_BINARY = "binary";
+    public static final String FORMAT_REGION = "region";
+
+    public static TileMap loadMap(File world, String mapName, ContentManager contentManager) throws IOException {
         File map = new File(world, "maps/" + mapName);
+        TileMap tm = openMap(map, contentManager);
+        // sectors load on demand, unless the map asks to be read up front
+        JsonObject metaData = readMetaData(map);
+        if (metaData.has("preload") && metaData.get("preload").getAsBoolean()) {
+            int loadThreads = metaData.has("loadThreads") ? metaData.get("loadThreads").getAsInt() : 1;
+            tm.loadAll(loadThreads, percent -> {
+                if (percent % 10 == 0) {
+                    System.out.println("Loading map... " + percent + "%");
+                }
+            });
+        }
+        return tm;
+    }
+
+    public static JsonObject readMetaData(File map) throws IOException {
         String json = FileUtils.readFileToString(new File(map, "meta.json"));
+        return new Gson().fromJson(json, JsonObject.class);
+    }
+
+    public static String getFormat(JsonObject metaData) {
+        return metaData.has("format") ? metaData.get("format").getAsString() : FORMAT_JSON;
+    }
 
-        JsonObject metaData = new Gson().fromJson(json, JsonObject.class);
+    static TileMap openMap(File map, ContentManager contentManager) throws IOException {
+        JsonObject metaData = readMetaData(map);
 
         int size = metaData.get("size").getAsInt();
         int depth = metaData.get("depth").getAsInt();
         int sectorSize = metaData.get("sectorSize").getAsInt();
-
-        TileMap tm = new TileMap(size, depth, sectorSize, new JsonSectorLoader(map), new SectorSaver(map));
+        String format = getFormat(metaData);
+
+        TileMap tm;
+        switch (format) {
+            case FORMAT_JSON:
+                tm = new TileMap(size, depth, sectorSize, new JsonSectorLoader(map), new SectorSaver(map));
+                break;
+            case FORMAT_BINARY:
+                tm = new TileMap(size, depth, sectorSize, new BinarySectorLoader(map, contentManager), new BinarySectorSaver(map));
+                break;
+            case FORMAT_REGION:
+                RegionSectorStore store = new RegionSectorStore(map, size / sectorSize, depth, sectorSize, contentManager);
+                tm = new TileMap(size, depth, sectorSize, store, store);
+                break;
+            default:
+                throw new IOException("Unknown map format: " + format);
+        }
 
         tm._defaultPlayerSpawn = new Gson().fromJson(metaData.get("defaultPlayerSpawn"), Coord.class);
         if (tm._defaultPlayerSpawn == null) {
             tm._defaultPlayerSpawn = new Coord(0, 0, 0);
         }
-        
-        tm.loadAll();
-        tm.save();
+        if (metaData.has("maxLoadedSectors")) {
+            tm.setMaxLoadedSectors(metaData.get("maxLoadedSectors").getAsInt());
+        }
 
         return tm;
     }
@@ -44,6 +103,17 @@ public class TileMap {
     private final Sector[][][] _sectors;
     private final SectorLoader _sectorLoader;
     private final SectorSaver _sectorSaver;
+    private final Set<Sector> _loadedSectors = new LinkedHashSet<>();
+    private Predicate<Sector> _sectorInUse = sector -> false;
+    private Consumer<Sector> _beforeTileChange = sector -> {
+    };
+    private final Map<Integer, Sector> _pendingWrites = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<Boolean>> _evictedWrites = ConcurrentHashMap.newKeySet();
+    private Executor _writeExecutor = Runnable::run;
+    private final GrowthQueue _growth = new GrowthQueue();
+    private final CreatureIndex _creatureIndex;
+    private int _maxLoadedSectors; // 0 means no limit
+    private long _accessClock;
 
     public TileMap(int size, int depth, int sectorSize, SectorLoader sectorLoader, SectorSaver sectorSaver) {
         if (size % sectorSize != 0) {
@@ -60,6 +130,7 @@ public class TileMap {
         _sectors = new Sector[sectorsAcross][sectorsAcross][depth];
         _sectorLoader = sectorLoader;
         _sectorSaver = sectorSaver;
+        _creatureIndex = new CreatureIndex(size, depth, sectorSize);
     }
 
     public Coord getDefaultPlayerSpawn() {
@@ -67,69 +138,365 @@ public class TileMap {
         return _defaultPlayerSpawn.add(random.nextInt(3), random.nextInt(3), 0);
     }
 
+    /**
+     * Caps how many sectors stay in memory. Once the cap is exceeded, the least
+     * recently touched sectors that are not in use are saved and dropped.
+     */
+    public void setMaxLoadedSectors(int maxLoadedSectors) {
+        _maxLoadedSectors = maxLoadedSectors;
+    }
+
+    /**
+     * Sectors matching this are never evicted, e.g. ones a client is viewing.
+     */
+    public void setSectorInUse(Predicate<Sector> sectorInUse) {
+        _sectorInUse = sectorInUse;
+    }
+
+    /**
+     * Runs before each floor or item change, under the sector's lock, e.g. to
+     * keep the state clients may have been left with.
+     */
+    public void setBeforeTileChange(Consumer<Sector> beforeTileChange) {
+        _beforeTileChange = beforeTileChange;
+    }
+
+    /**
+     * Evicted sectors are written on this, e.g. a dedicated i/o thread. It must
+     * not be a thread that waits on getEvictedWrites. Defaults to writing on
+     * the calling thread.
+     */
+    public void setWriteExecutor(Executor writeExecutor) {
+        _writeExecutor = writeExecutor;
+    }
+
+    public synchronized int getLoadedSectorCount() {
+        return _loadedSectors.size();
+    }
+
     // :( temporary
     public void loadAll() throws IOException {
-        for (int x = 0; x < sectorsAcross; x++) {
-            for (int y = 0; y < sectorsAcross; y++) {
-                for (int z = 0; z < depth; z++) {
-                    Sector sector = _sectors[x][y][z];
-                    if (sector == null) {
-                        _sectors[x][y][z] = _sectorLoader.load(sectorSize, x, y, z);
+        loadAll(1, percent -> {
+        });
+    }
+
+    /**
+     * Loads every sector not loaded yet. With a parallelism above 1 the
+     * sectors are read and parsed on a fork-join pool of that size, otherwise
+     * they are loaded one by one on the calling thread. progress is told of
+     * each whole percent done, possibly from a pool thread.
+     */
+    public void loadAll(int parallelism, IntConsumer progress) throws IOException {
+        AtomicInteger loaded = new AtomicInteger();
+        AtomicInteger percentDone = new AtomicInteger();
+        IntConsumer loadSector = index -> {
+            int sx = index % sectorsAcross;
+            int sy = index / sectorsAcross % sectorsAcross;
+            int sz = index / sectorsFloor;
+            if (_sectors[sx][sy][sz] == null) {
+                try {
+                    installLoadedSector(_sectorLoader.load(sectorSize, sx, sy, sz), sx, sy, sz);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            int percent = loaded.incrementAndGet() * 100 / sectorsTotal;
+            for (int done = percentDone.get(); done < percent; done = percentDone.get()) {
+                if (percentDone.compareAndSet(done, done + 1)) {
+                    progress.accept(done + 1);
+                }
+            }
+        };
+
+        try {
+            if (parallelism <= 1) {
+                IntStream.range(0, sectorsTotal).forEach(loadSector);
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    pool.submit(() -> IntStream.range(0, sectorsTotal).parallel().forEach(loadSector)).get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while loading the map", ex);
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
                     }
+                    throw new IOException(ex.getCause());
+                } finally {
+                    pool.shutdown();
                 }
             }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
         }
     }
 
-    // :( lol
-    public void forAllTilesLoaded(Function<Integer, Function<Integer, Function<Integer, Consumer<Tile>>>> func) {
+    public void forAllSectorsLoaded(Consumer<Sector> func) {
         for (int sx = 0; sx < sectorsAcross; sx++) {
             for (int sy = 0; sy < sectorsAcross; sy++) {
                 for (int sz = 0; sz < depth; sz++) {
                     Sector sector = _sectors[sx][sy][sz];
                     if (sector != null) {
-                        for (int x = 0; x < sectorSize; x++) {
-                            for (int y = 0; y < sectorSize; y++) {
-                                func.apply(x + sx * sectorSize).apply(y + sy * sectorSize).apply(sz).accept(sector._tiles[x][y]);
-                            }
-                        }
+                        func.accept(sector);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Writes every loaded sector that changed since it was last saved.
+     */
     public void save() throws IOException {
-        for (int x = 0; x < sectorsAcross; x++) {
-            for (int y = 0; y < sectorsAcross; y++) {
-                for (int z = 0; z < depth; z++) {
-                    Sector sector = _sectors[x][y][z];
-                    if (sector != null) {
-                        _sectorSaver.save(sector);
-                    }
+        IOException error = null;
+        for (Sector snapshot : snapshotDirtySectors()) {
+            try {
+                writeSnapshot(snapshot);
+            } catch (IOException ex) {
+                error = error == null ? ex : error;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        flush();
+    }
+
+    /**
+     * Makes the sectors written so far durable, e.g. the region file's table.
+     */
+    public void flush() throws IOException {
+        _sectorSaver.flush();
+    }
+
+    public void close() throws IOException {
+        _sectorSaver.close();
+    }
+
+    /**
+     * Copies every dirty sector and marks it clean, so changes made while the
+     * copies are being written are kept for the next save. Until it is written
+     * with writeSnapshot, a copy stands in for its sector on disk. Evicted
+     * sectors whose write failed are handed back to be written again.
+     */
+    public synchronized List<Sector> snapshotDirtySectors() {
+        List<Sector> snapshots = new ArrayList<>();
+        _growth.ageAll(loc -> _sectors[loc.x / sectorSize][loc.y / sectorSize][loc.z].markDirty());
+        for (Sector sector : _loadedSectors) {
+            synchronized (sector) {
+                if (sector.isDirty()) {
+                    sector.markClean();
+                    Sector snapshot = sector.snapshot();
+                    _pendingWrites.put(sectorIndex(sector.sx, sector.sy, sector.sz), snapshot);
+                    snapshots.add(snapshot);
                 }
             }
         }
+        for (Sector pending : _pendingWrites.values()) {
+            if (pending.isDirty() && _sectors[pending.sx][pending.sy][pending.sz] == null) {
+                pending.markClean();
+                snapshots.add(pending);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * The writes of evicted sectors queued so far, each completing with
+     * whether it succeeded. Until they have, the changes in them are only in
+     * memory.
+     */
+    public List<CompletableFuture<Boolean>> getEvictedWrites() {
+        return new ArrayList<>(_evictedWrites);
+    }
+
+    public void writeSnapshot(Sector snapshot) throws IOException {
+        int index = sectorIndex(snapshot.sx, snapshot.sy, snapshot.sz);
+        try {
+            _sectorSaver.save(snapshot);
+        } catch (IOException ex) {
+            synchronized (this) {
+                Sector sector = _sectors[snapshot.sx][snapshot.sy][snapshot.sz];
+                if (sector != null) {
+                    sector.markDirty();
+                } else {
+                    snapshot.markDirty(); // stays pending, and is loaded as dirty
+                }
+            }
+            throw ex;
+        } finally {
+            if (!snapshot.isDirty()) {
+                _pendingWrites.remove(index, snapshot);
+            }
+        }
+    }
+
+    public int sectorIndex(int sx, int sy, int sz) {
+        return (sz * sectorsAcross + sy) * sectorsAcross + sx;
+    }
+
+    public int sectorIndex(Sector sector) {
+        return sectorIndex(sector.sx, sector.sy, sector.sz);
+    }
+
+    public synchronized int getDirtySectorCount() {
+        return (int) _loadedSectors.stream().filter(Sector::isDirty).count();
     }
 
     public String getSectorData(int sx, int sy, int sz) {
         Sector sector = getSector(sx, sy, sz);
         Gson gson = new Gson(); // :(
-        return gson.toJson(sector._tiles);
+        return gson.toJson(sector.toTiles());
     }
 
+    /**
+     * Loads the sector if it isn't already. Throws UncheckedIOException if it
+     * can't be read, rather than handing back a sector that would be saved
+     * over the one on disk.
+     */
     public Sector getSector(int sx, int sy, int sz) {
         Sector sector = _sectors[sx][sy][sz];
         if (sector == null) {
             try {
-                return _sectors[sx][sy][sz] = _sectorLoader.load(sectorSize, sx, sy, sz);
+                sector = loadSector(sx, sy, sz);
             } catch (IOException ex) {
-                Logger.getLogger(TileMap.class.getName()).log(Level.SEVERE, null, ex);
+                throw new UncheckedIOException(String.format("Could not load sector %d, %d, %d", sx, sy, sz), ex);
             }
         }
+        if (sector != null) {
+            sector._lastAccess = ++_accessClock; // racy, but only has to be roughly right
+        }
         return sector;
     }
 
+    private synchronized Sector loadSector(int sx, int sy, int sz) throws IOException {
+        Sector sector = _sectors[sx][sy][sz];
+        if (sector == null) {
+            // a snapshot that hasn't been written yet is newer than what is on disk
+            Sector pending = _pendingWrites.get(sectorIndex(sx, sy, sz));
+            if (pending != null) {
+                sector = pending.snapshot();
+                if (pending.isDirty()) {
+                    sector.markDirty();
+                }
+            } else {
+                sector = _sectorLoader.load(sectorSize, sx, sy, sz);
+            }
+            if (sector != null) {
+                register(sector);
+            }
+        }
+        return sector;
+    }
+
+    // for sectors read outside the lock, which someone else may have loaded or evicted meanwhile
+    private synchronized void installLoadedSector(Sector loaded, int sx, int sy, int sz) {
+        if (_sectors[sx][sy][sz] == null && !_pendingWrites.containsKey(sectorIndex(sx, sy, sz)) && loaded != null) {
+            register(loaded);
+        }
+    }
+
+    private void register(Sector sector) {
+        sector._lastAccess = ++_accessClock;
+        _sectors[sector.sx][sector.sy][sector.sz] = sector;
+        _loadedSectors.add(sector);
+        forGrowingItems(sector, (loc, item) -> _growth.add(item, loc));
+        evictIfOverBudget(sector);
+    }
+
+    private void forGrowingItems(Sector sector, BiConsumer<Coord, ItemInstance> consumer) {
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                ItemInstance item = sector.getItem(x, y);
+                if (GrowthQueue.grows(item)) {
+                    consumer.accept(new Coord(sector.sx * sectorSize + x, sector.sy * sectorSize + y, sector.sz), item);
+                }
+            }
+        }
+    }
+
+    // evicts down to 90% of the budget, so that a full map doesn't sort on every load
+    private void evictIfOverBudget(Sector justLoaded) {
+        if (_maxLoadedSectors <= 0 || _loadedSectors.size() <= _maxLoadedSectors) {
+            return;
+        }
+        int target = _maxLoadedSectors - _maxLoadedSectors / 10;
+        List<Sector> candidates = new ArrayList<>(_loadedSectors);
+        candidates.sort(Comparator.comparingLong(sector -> sector._lastAccess));
+        for (Sector sector : candidates) {
+            if (_loadedSectors.size() <= target) {
+                break;
+            }
+            if (sector != justLoaded && !_sectorInUse.test(sector) && !sector.hasCreatures()) {
+                evict(sector);
+            }
+        }
+    }
+
+    private void evict(Sector sector) {
+        // game threads change sectors outside the map's lock, see change()
+        synchronized (sector) {
+            sector.markEvicted();
+            // unloaded items stop growing
+            forGrowingItems(sector, (loc, item) -> {
+                if (_growth.age(loc)) {
+                    sector.markDirty();
+                }
+                _growth.remove(loc);
+            });
+            if (sector.isDirty()) {
+                sector.markClean();
+                _pendingWrites.put(sectorIndex(sector.sx, sector.sy, sector.sz), sector);
+                writeEvicted(sector);
+            }
+        }
+        _sectors[sector.sx][sector.sy][sector.sz] = null;
+        _loadedSectors.remove(sector);
+    }
+
+    // registers the write and queues it together, so a save sees either both or neither
+    private void writeEvicted(Sector sector) {
+        CompletableFuture<Boolean> written = new CompletableFuture<>();
+        _evictedWrites.add(written);
+        try {
+            _writeExecutor.execute(() -> {
+                boolean ok = false;
+                try {
+                    writeSnapshot(sector);
+                    ok = true;
+                } catch (IOException ex) {
+                    Logger.getLogger(TileMap.class.getName()).log(Level.SEVERE, "Could not save evicted sector", ex);
+                } finally {
+                    _evictedWrites.remove(written);
+                    written.complete(ok);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger(TileMap.class.getName()).log(Level.SEVERE, "Could not queue evicted sector", ex);
+            sector.markDirty(); // stays pending, and the next save writes it
+            _evictedWrites.remove(written);
+            written.complete(false);
+        }
+    }
+
+    /**
+     * Makes a change to the sector holding the tile, under the sector's lock.
+     * A sector evicted between looking it up and locking it is looked up
+     * again, so the change is never made to a copy that was already written.
+     */
+    private void change(int x, int y, int z, Consumer<Sector> change) {
+        while (true) {
+            Sector sector = getSectorOf(x, y, z);
+            synchronized (sector) {
+                if (!sector.isEvicted()) {
+                    change.accept(sector);
+                    return;
+                }
+            }
+        }
+    }
+
     public Sector getSectorOf(Coord loc) {
         return getSectorOf(loc.x, loc.y, loc.z);
     }
@@ -142,50 +509,120 @@ public class TileMap {
         return getSector(sx, sy, z);
     }
 
-    public Tile getTile(Coord loc) {
-        return getTile(loc.x, loc.y, loc.z);
-    }
-
-    public Tile getTile(int x, int y, int z) {
-        x = wrap(x);
-        y = wrap(y);
-        return getSectorOf(x, y, z).getTile(x % sectorSize, y % sectorSize);
-    }
-
     public int getFloor(Coord coord) {
-        return getTile(coord).floor;
+        return getFloor(coord.x, coord.y, coord.z);
     }
 
     public int getFloor(int x, int y, int z) {
-        return getTile(x, y, z).floor;
+        return getSectorOf(x, y, z).getFloor(wrap(x) % sectorSize, wrap(y) % sectorSize);
     }
 
     public void setFloor(int x, int y, int z, int floor) {
-        getTile(x, y, z).floor = floor;
+        change(x, y, z, sector -> {
+            _beforeTileChange.accept(sector);
+            sector.setFloor(wrap(x) % sectorSize, wrap(y) % sectorSize, floor);
+            sector.markDirty();
+        });
     }
 
     public void setFloor(Coord loc, int floor) {
-        getTile(loc).floor = floor;
+        setFloor(loc.x, loc.y, loc.z, floor);
     }
 
     public ItemInstance getItem(Coord c) {
-        return getTile(c.x, c.y, c.z).item;
+        return getItem(c.x, c.y, c.z);
     }
 
     public ItemInstance getItem(int x, int y, int z) {
-        return getTile(x, y, z).item;
+        return getSectorOf(x, y, z).getItem(wrap(x) % sectorSize, wrap(y) % sectorSize);
+    }
+
+    /**
+     * Brings the age of a growing item up to date, for when it is about to be
+     * moved or used. Ages read through getItem alone may be behind.
+     */
+    public void ageItem(Coord loc) {
+        Coord wrapped = wrap(loc);
+        change(loc.x, loc.y, loc.z, sector -> {
+            if (_growth.age(wrapped)) {
+                sector.markDirty();
+            }
+        });
     }
 
     public void setItem(ItemInstance item, int x, int y, int z) {
-        getTile(x, y, z).item = item;
+        change(x, y, z, sector -> {
+            _beforeTileChange.accept(sector);
+            ItemInstance previous = sector.getItem(wrap(x) % sectorSize, wrap(y) % sectorSize);
+            sector.setItem(wrap(x) % sectorSize, wrap(y) % sectorSize, item);
+            sector.markDirty();
+            if (previous != item) {
+                Coord loc = new Coord(wrap(x), wrap(y), z);
+                _growth.remove(loc);
+                _growth.add(item, loc);
+            }
+        });
+    }
+
+    /**
+     * Ages every growing item on the loaded sectors by one, and hands those
+     * that are fully grown to grow.
+     */
+    public void grow(BiConsumer<Coord, ItemInstance> grow) {
+        _growth.tick(grow);
+    }
+
+    public int getGrowingItemCount() {
+        return _growth.size();
     }
 
     public void setItem(ItemInstance item, Coord c) {
-        getTile(c.x, c.y, c.z).item = item;
+        setItem(item, c.x, c.y, c.z);
     }
 
     public Entity getCreature(Coord loc) {
-        return getTile(loc).cre;
+        return getCreature(loc.x, loc.y, loc.z);
+    }
+
+    public Entity getCreature(int x, int y, int z) {
+        return getSectorOf(x, y, z).getCreature(wrap(x) % sectorSize, wrap(y) % sectorSize);
+    }
+
+    /**
+     * Puts the creature on the tile. A creature it lands on, e.g. by
+     * teleporting, stays in the index, since it still lives there. Null
+     * clears the tile and takes its occupant out of the index; use
+     * removeCreature to take off a particular creature.
+     */
+    public void setCreature(Coord loc, Entity cre) {
+        change(loc.x, loc.y, loc.z, sector -> {
+            int x = wrap(loc.x) % sectorSize, y = wrap(loc.y) % sectorSize;
+            Entity previous = sector.getCreature(x, y);
+            sector.setCreature(x, y, cre);
+            if (cre != null) {
+                _creatureIndex.add(cre, loc);
+            } else if (previous != null) {
+                _creatureIndex.remove(previous, loc);
+            }
+        });
+    }
+
+    /**
+     * Takes the creature off the tile it is leaving, and out of the index.
+     * The tile is left alone if another creature was put on it since.
+     */
+    public void removeCreature(Coord loc, Entity cre) {
+        change(loc.x, loc.y, loc.z, sector -> {
+            int x = wrap(loc.x) % sectorSize, y = wrap(loc.y) % sectorSize;
+            if (sector.getCreature(x, y) == cre) {
+                sector.setCreature(x, y, null);
+            }
+            _creatureIndex.remove(cre, loc);
+        });
+    }
+
+    public CreatureIndex getCreatureIndex() {
+        return _creatureIndex;
     }
 
     public int wrap(int value) {
@@ -198,13 +635,14 @@ public class TileMap {
     }
 
     public boolean walkable(Coord coord) {
-        Tile tile = getTile(coord);
-        return tile.cre == null && tile.item.getItem().walkable && tile.floor != 0;
+        return walkable(coord.x, coord.y, coord.z);
     }
 
     public boolean walkable(int x, int y, int z) {
-        Tile tile = getTile(x, y, z);
-        return tile.cre == null && tile.item.getItem().walkable && tile.floor != 0;
+        Sector sector = getSectorOf(x, y, z);
+        x = wrap(x) % sectorSize;
+        y = wrap(y) % sectorSize;
+        return sector.getCreature(x, y) == null && sector.getItem(x, y).getItem().walkable && sector.getFloor(x, y) != 0;
     }
 
     public Coord getCoordFromIndex(int index) {
@@ -223,11 +661,11 @@ public class TileMap {
     }
 
     public boolean hasRightsTo(Player player, Coord coord) {
-        Tile tile = getTile(coord);
-        if (tile.getOwner() == player.getPlayerId() || tile.isUnclaimed()) {
+        Sector sector = getSectorOf(coord);
+        int tileOwner = sector.getTileOwner(wrap(coord.x) % sectorSize, wrap(coord.y) % sectorSize);
+        if (tileOwner == player.getPlayerId() || tileOwner == Tile.OWNER_UNCLAIMED) {
             return true;
         }
-        Sector sector = getSectorOf(coord);
         return sector.getOwner() == player.getPlayerId() || sector.isUnclaimed();
     }
 }
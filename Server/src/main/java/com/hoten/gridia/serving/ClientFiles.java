@@ -0,0 +1,93 @@
+package com.hoten.gridia.serving;
+
+import com.google.gson.Gson;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The files every client keeps a copy of, and their hashes. A connecting
+ * client is sent the hashes, and asks for the files it is missing or has an
+ * old copy of.
+ */
+public class ClientFiles {
+
+    private final File _folder;
+    private final String _localFolderName;
+    private final Map<String, byte[]> _hashes = new TreeMap<>();
+    private final String _hashesJson;
+
+    public ClientFiles(File folder, String localFolderName) throws IOException {
+        _folder = folder;
+        _localFolderName = localFolderName;
+        Path root = folder.toPath();
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                _hashes.put(root.relativize(path).toString().replace(File.separatorChar, '/'), md5(Files.readAllBytes(path)));
+            }
+        }
+        _hashesJson = new Gson().toJson(_hashes);
+    }
+
+    private static byte[] md5(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The whole handshake, on a blocking connection.
+     */
+    public void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        writeHashes(out);
+        out.flush();
+        writeFiles(out, parseRequest(in.readUTF()));
+        out.flush();
+        in.readByte(); // the client is done updating its files
+    }
+
+    // along with where the client keeps its copies
+    public void writeHashes(DataOutputStream out) throws IOException {
+        out.writeUTF(_localFolderName);
+        out.writeUTF(_hashesJson);
+    }
+
+    public List<String> parseRequest(String json) {
+        return Arrays.asList(new Gson().fromJson(json, String[].class));
+    }
+
+    public void writeFiles(DataOutputStream out, List<String> names) throws IOException {
+        List<String> sending = names.stream().filter(this::has).collect(Collectors.toList());
+        out.writeInt(sending.size());
+        for (String name : sending) {
+            byte[] data = read(name);
+            out.writeUTF(name);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+    }
+
+    public boolean has(String name) {
+        return _hashes.containsKey(name);
+    }
+
+    public byte[] read(String name) throws IOException {
+        if (!has(name)) {
+            throw new IOException("Not a client file: " + name);
+        }
+        return Files.readAllBytes(new File(_folder, name).toPath());
+    }
+}
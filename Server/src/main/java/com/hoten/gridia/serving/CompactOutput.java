@@ -0,0 +1,42 @@
+package com.hoten.gridia.serving;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the fields of a binary message. Ids, coordinates and quantities are
+ * unsigned varints, so most take one or two bytes; values that may be
+ * negative are zigzagged first.
+ */
+public class CompactOutput {
+
+    private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream(16);
+
+    public CompactOutput writeVarInt(int value) {
+        return writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public CompactOutput writeSignedVarInt(int value) {
+        return writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public CompactOutput writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            _bytes.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        _bytes.write((int) value);
+        return this;
+    }
+
+    public CompactOutput writeString(String value) {
+        byte[] utf = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(utf.length);
+        _bytes.write(utf, 0, utf.length);
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return _bytes.toByteArray();
+    }
+}
@@ -5,23 +5,34 @@ import com.hoten.gridia.map.Sector;
 import com.hoten.servingjava.SocketHandler;
 import com.hoten.servingjava.SocketHandlerImpl;
 import com.hoten.servingjava.message.Message;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
 
 public class ConnectionToGridiaClientHandler implements SocketHandler {
 
     private final SocketHandler _socketHandler;
-    private final List<Sector> _loadedSectors = new ArrayList(); // :( Player?
     private final ServingGridia _server;
+    private final OutboundQueue _outbound;
+    private final ByteArrayOutputStream _batch = new ByteArrayOutputStream(); // only ever touched by the queue's writer
+    private final DataOutputStream _batchOut = new DataOutputStream(_batch);
+    private final ByteArrayOutputStream _binaries = new ByteArrayOutputStream(); // binary messages waiting to be framed together
+    private final DataOutputStream _binariesOut = new DataOutputStream(_binaries);
+    private volatile boolean _binaryMessages;
+    private volatile boolean _compactSectors;
     public Player player;
 
     public ConnectionToGridiaClientHandler(Socket socket, ServingGridia server) throws IOException {
-        _socketHandler = new SocketHandlerImpl(socket);
+        this(new SocketHandlerImpl(socket), server);
+    }
+
+    public ConnectionToGridiaClientHandler(SocketHandler socketHandler, ServingGridia server) {
+        _socketHandler = socketHandler;
         _server = server;
+        _outbound = new OutboundQueue(server.getOutboundLimit(), server.getOverflowPolicy(), server.getOutboundWriters(), this::close,
+                server.getFlushWindowMillis(), this::writeBatch);
     }
 
     @Override
@@ -29,16 +40,74 @@ public class ConnectionToGridiaClientHandler implements SocketHandler {
         _socketHandler.start(onConnectionSettled, topLevelSocketHandler);
     }
 
+    // queued, so the caller never waits on the socket
     @Override
     public void send(Message message) throws IOException {
-        _socketHandler.send(message);
+        _outbound.offer(null, () -> {
+            writeBatch();
+            _socketHandler.send(message);
+        });
+    }
+
+    // frames are gathered up and written together at the end of the batch
+    public void send(EncodedMessage message) {
+        _outbound.offer(message.getSupersedeKey(), () -> {
+            if (_binaryMessages && message.hasBinary()) {
+                message.writeBinaryTo(_binariesOut);
+            } else {
+                frameBinaries();
+                message.writeTo(_batchOut);
+            }
+        });
+    }
+
+    private void frameBinaries() throws IOException {
+        if (_binaries.size() != 0) {
+            EncodedMessage.writeBinaryFrame(_batchOut, _binaries);
+            _binaries.reset();
+        }
+    }
+
+    // shares the output stream's lock with the messages sent through the socket handler, so it runs on platform writers only
+    private void writeBatch() throws IOException {
+        frameBinaries();
+        if (_batch.size() == 0) {
+            return;
+        }
+        DataOutputStream out = getOutputStream();
+        synchronized (out) {
+            _batch.writeTo(out);
+            out.flush();
+        }
+        _batch.reset();
     }
 
     @Override
     public void close() {
+        _outbound.close();
         _socketHandler.close();
     }
 
+    public boolean getBinaryMessages() {
+        return _binaryMessages;
+    }
+
+    public void setBinaryMessages(boolean binaryMessages) {
+        _binaryMessages = binaryMessages;
+    }
+
+    public boolean getCompactSectors() {
+        return _compactSectors;
+    }
+
+    public void setCompactSectors(boolean compactSectors) {
+        _compactSectors = compactSectors;
+    }
+
+    public OutboundQueue getOutboundQueue() {
+        return _outbound;
+    }
+
     @Override
     public DataOutputStream getOutputStream() {
         return _socketHandler.getOutputStream();
@@ -50,11 +119,11 @@ public class ConnectionToGridiaClientHandler implements SocketHandler {
     }
 
     public boolean hasSectorLoaded(Sector sector) {
-        return _loadedSectors.contains(sector);
+        return _server.sectorSubscriptions.isSubscribed(this, sector);
     }
 
     public void addToLoadedSectors(Sector sector) {
-        _loadedSectors.add(sector);
+        _server.sectorSubscriptions.subscribe(this, sector);
     }
 
     public ServingGridia getServer() {
@@ -0,0 +1,154 @@
+package com.hoten.gridia.serving;
+
+import com.google.gson.Gson;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A message serialized once, frame and all, so broadcasting it to any number
+ * of clients writes the same bytes to each socket. The frame is the one the
+ * client reads: data length, type, compressed flag, then the data.
+ *
+ * A message may also have a binary form, an opcode followed by its fields,
+ * for clients that asked for binary messages. Consecutive binary forms are
+ * sent together in one Binary frame.
+ */
+public final class EncodedMessage {
+
+    public static final String BINARY_TYPE = "Binary";
+    private static final Gson GSON = new Gson();
+
+    private final String _type;
+    private final String _supersedeKey;
+    private final byte[] _frame;
+    private final byte[] _binary;
+
+    private EncodedMessage(String type, String supersedeKey, byte[] data, byte[] binary) {
+        this(type, supersedeKey, data, false, binary);
+    }
+
+    private EncodedMessage(String type, String supersedeKey, byte[] data, boolean compressed, byte[] binary) {
+        _type = type;
+        _supersedeKey = supersedeKey;
+        _binary = binary;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + type.length() + 7);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(data.length);
+            out.writeUTF(type);
+            out.writeBoolean(compressed);
+            out.write(data);
+            _frame = bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public String getType() {
+        return _type;
+    }
+
+    /**
+     * Messages with the same key carry state where only the newest matters,
+     * so a queued one may be dropped in favour of a newer one. Null if every
+     * message of this type must be delivered.
+     */
+    public String getSupersedeKey() {
+        return _supersedeKey;
+    }
+
+    public int size() {
+        return _frame.length;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.write(_frame);
+    }
+
+    public boolean hasBinary() {
+        return _binary != null;
+    }
+
+    public int binarySize() {
+        return _binary.length;
+    }
+
+    // just the opcode and fields, to be gathered into a Binary frame
+    public void writeBinaryTo(DataOutputStream out) throws IOException {
+        out.write(_binary);
+    }
+
+    public static void writeBinaryFrame(DataOutputStream out, ByteArrayOutputStream binaries) throws IOException {
+        out.writeInt(binaries.size());
+        out.writeUTF(BINARY_TYPE);
+        out.writeBoolean(false);
+        binaries.writeTo(out);
+    }
+
+    // for messages the client reads field by field, like SectorData
+    public static EncodedMessage bytes(String type, byte[] data) {
+        return new EncodedMessage(type, null, data, null);
+    }
+
+    // gzipped, as the client expects of compressed messages, when that makes it smaller
+    public static EncodedMessage compressedBytes(String type, byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (compressed.size() >= data.length) {
+            return bytes(type, data);
+        }
+        return new EncodedMessage(type, null, compressed.toByteArray(), true, null);
+    }
+
+    public static Builder json(String type) {
+        return new Builder(type);
+    }
+
+    public static class Builder {
+
+        private final String _type;
+        private final Map<String, Object> _values = new LinkedHashMap<>();
+        private String _supersedeKey;
+        private byte[] _binary;
+
+        private Builder(String type) {
+            _type = type;
+        }
+
+        public Builder set(String key, Object value) {
+            _values.put(key, value);
+            return this;
+        }
+
+        public Builder supersedes(Object... key) {
+            StringBuilder builder = new StringBuilder(_type);
+            for (Object part : key) {
+                builder.append(' ').append(part);
+            }
+            _supersedeKey = builder.toString();
+            return this;
+        }
+
+        public Builder binary(int opcode, Consumer<CompactOutput> fields) {
+            CompactOutput out = new CompactOutput().writeVarInt(opcode);
+            fields.accept(out);
+            _binary = out.toByteArray();
+            return this;
+        }
+
+        public EncodedMessage build() {
+            return new EncodedMessage(_type, _supersedeKey, GSON.toJson(_values).getBytes(StandardCharsets.UTF_8), _binary);
+        }
+    }
+}
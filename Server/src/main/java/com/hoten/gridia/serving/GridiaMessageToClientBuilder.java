@@ -8,18 +8,27 @@ import com.hoten.gridia.content.ItemInstance;
 import com.hoten.gridia.content.ItemUse;
 import com.hoten.gridia.map.Coord;
 import com.hoten.gridia.map.Sector;
-import com.hoten.gridia.map.Tile;
 import com.hoten.gridia.scripting.Entity;
 import com.hoten.gridia.serializers.GridiaGson;
-import com.hoten.servingjava.message.BinaryMessageBuilder;
 import com.hoten.servingjava.message.JsonMessageBuilder;
 import com.hoten.servingjava.message.Message;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class GridiaMessageToClientBuilder {
 
+    // offered in Initialize; a client that answers with the same version gets binary messages
+    public static final int BINARY_MESSAGES_VERSION = 1;
+    // likewise for SectorDataCompact instead of SectorData
+    public static final int COMPACT_SECTORS_VERSION = 1;
+    // opcodes of the binary messages, matching the client's Binary handler
+    private static final int MOVE_CREATURE = 1, TILE_UPDATE = 2, SET_LIFE = 3, ANIMATION = 4, CONTAINER_UPDATE = 5, REMOVE_CREATURE = 6;
+
     public Message addCreature(Entity cre) {
         return new JsonMessageBuilder()
                 .type("AddCreature")
@@ -38,73 +47,219 @@ public class GridiaMessageToClientBuilder {
                 .build();
     }
 
-    public Message moveCreature(Entity cre, int timeoffset, boolean isTeleport, boolean onRaft, boolean tellMover) {
-        return new JsonMessageBuilder()
-                .type("MoveCreature")
-                .set("time", System.currentTimeMillis() + timeoffset)
-                .set("id", cre.id)
-                .set("loc", cre.location)
+    public EncodedMessage moveCreature(Entity cre, int timeoffset, boolean isTeleport, boolean onRaft, boolean tellMover) {
+        return moveCreature(cre, timeoffset, isTeleport, onRaft, tellMover, !isTeleport); // a teleport must not be collapsed into a later step
+    }
+
+    // where a step starts from, sent just before the step; collapsing it into the step would lose the origin
+    public EncodedMessage stepFrom(Entity cre, boolean onRaft, boolean tellMover) {
+        return moveCreature(cre, 0, false, onRaft, tellMover, false);
+    }
+
+    private EncodedMessage moveCreature(Entity cre, int timeoffset, boolean isTeleport, boolean onRaft, boolean tellMover, boolean supersedable) {
+        int id = cre.id;
+        Coord loc = cre.location;
+        long time = System.currentTimeMillis() + timeoffset;
+        EncodedMessage.Builder builder = EncodedMessage.json("MoveCreature");
+        if (supersedable) {
+            builder.supersedes(id);
+        }
+        return builder
+                .set("time", time)
+                .set("id", id)
+                .set("loc", loc)
                 .set("isTeleport", isTeleport)
                 .set("onRaft", onRaft)
                 .set("tellMover", tellMover)
+                .binary(MOVE_CREATURE, out -> writeCoord(out.writeVarInt(id), loc)
+                        .writeVarLong(time)
+                        .writeVarInt((isTeleport ? 1 : 0) | (onRaft ? 2 : 0) | (tellMover ? 4 : 0)))
+                .build();
+    }
+
+    public EncodedMessage removeCreature(Entity cre) {
+        int id = cre.id;
+        return EncodedMessage.json("RemoveCreature")
+                .set("id", id)
+                .binary(REMOVE_CREATURE, out -> out.writeVarInt(id))
                 .build();
     }
 
-    public Message removeCreature(Entity cre) {
+    public Message sectorUnload(int sx, int sy, int sz) {
         return new JsonMessageBuilder()
-                .type("RemoveCreature")
-                .set("id", cre.id)
+                .type("SectorUnload")
+                .set("x", sx)
+                .set("y", sy)
+                .set("z", sz)
                 .build();
     }
 
-    public Message sectorRequest(Sector sector) throws IOException {
+    /**
+     * Floor, item and quantity of every tile, x-major: the tiles of a
+     * SectorData message, and what a sector's hash is taken of.
+     */
+    public byte[] sectorTiles(Sector sector) {
+        int sectorSize = sector.getSectorSize();
+        ByteBuffer tiles = ByteBuffer.allocate(sectorSize * sectorSize * 6);
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                ItemInstance item = sector.getItem(x, y);
+                tiles.putShort((short) sector.getFloor(x, y));
+                tiles.putShort((short) item.getItem().id);
+                tiles.putShort((short) item.getQuantity());
+            }
+        }
+        return tiles.array();
+    }
+
+    public EncodedMessage sectorData(Sector sector, byte[] tiles) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + tiles.length + 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(sector.sx);
+            out.writeInt(sector.sy);
+            out.writeInt(sector.sz);
+            out.write(tiles);
+            writeCreatures(out, sector);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return EncodedMessage.bytes("SectorData", bytes.toByteArray());
+    }
+
+    /**
+     * The same as SectorData, in far fewer bytes for plain sectors: floors as
+     * runs of the same floor, then only the tiles with an item on them, each
+     * as the number of tiles skipped since the last. The whole message is
+     * gzipped when that helps.
+     */
+    public EncodedMessage sectorDataCompact(Sector sector) {
+        int sectorSize = sector.getSectorSize();
+        int area = sectorSize * sectorSize;
+        CompactOutput tiles = new CompactOutput()
+                .writeVarInt(sector.sx)
+                .writeVarInt(sector.sy)
+                .writeVarInt(sector.sz);
+
+        int runFloor = sector.getFloor(0, 0);
+        int runLength = 0;
+        int items = 0;
+        for (int i = 0; i < area; i++) {
+            int floor = sector.getFloor(i / sectorSize, i % sectorSize);
+            if (floor != runFloor) {
+                tiles.writeVarInt(runLength).writeVarInt(runFloor);
+                runFloor = floor;
+                runLength = 0;
+            }
+            runLength++;
+            if (!sector.getItem(i / sectorSize, i % sectorSize).isNothing()) {
+                items++;
+            }
+        }
+        tiles.writeVarInt(runLength).writeVarInt(runFloor);
+
+        tiles.writeVarInt(items);
+        int last = -1;
+        for (int i = 0; i < area; i++) {
+            ItemInstance item = sector.getItem(i / sectorSize, i % sectorSize);
+            if (!item.isNothing()) {
+                tiles.writeVarInt(i - last - 1).writeVarInt(item.getItem().id).writeVarInt(item.getQuantity());
+                last = i;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(tiles.toByteArray());
+            writeCreatures(out, sector);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return EncodedMessage.compressedBytes("SectorDataCompact", bytes.toByteArray());
+    }
+
+    /**
+     * The tiles that differ from the ones a client already has, and all the
+     * creatures. A client whose tiles are up to date gets an empty delta.
+     */
+    public EncodedMessage sectorDelta(Sector sector, byte[] tiles, byte[] clientTiles) {
+        int sectorSize = sector.getSectorSize();
+        ByteArrayOutputStream changes = new ByteArrayOutputStream();
+        int changed = 0;
+        for (int i = 0; i < tiles.length; i += 6) {
+            if (!equalRange(tiles, clientTiles, i, 6)) {
+                int tile = i / 6;
+                changes.write(tile / sectorSize >> 8);
+                changes.write(tile / sectorSize);
+                changes.write(tile % sectorSize >> 8);
+                changes.write(tile % sectorSize);
+                changes.write(tiles, i, 6);
+                changed++;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + changes.size() + 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(sector.sx);
+            out.writeInt(sector.sy);
+            out.writeInt(sector.sz);
+            out.writeInt(changed);
+            changes.writeTo(out);
+            writeCreatures(out, sector);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return EncodedMessage.bytes("SectorDelta", bytes.toByteArray());
+    }
+
+    private static boolean equalRange(byte[] a, byte[] b, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeCreatures(DataOutputStream out, Sector sector) throws IOException {
         List<Entity> creatures = new ArrayList();
-        Tile[][] tiles = sector._tiles;
-
-        BinaryMessageBuilder builder = new BinaryMessageBuilder()
-                .type("SectorData")
-                .writeInt(sector.sx)
-                .writeInt(sector.sy)
-                .writeInt(sector.sz);
-
-        for (Tile[] tile : tiles) {
-            for (int y = 0; y < tiles.length; y++) {
-                builder.writeShort(tile[y].floor);
-                builder.writeShort(tile[y].item.getItem().id);
-                builder.writeShort(tile[y].item.getQuantity());
-                if (tile[y].cre != null) {
-                    creatures.add(tile[y].cre);
+        int sectorSize = sector.getSectorSize();
+        for (int x = 0; x < sectorSize; x++) {
+            for (int y = 0; y < sectorSize; y++) {
+                Entity cre = sector.getCreature(x, y);
+                if (cre != null) {
+                    creatures.add(cre);
                 }
             }
         }
 
-        builder.writeInt(creatures.size());
-        creatures.stream().forEach((cre) -> {
-            builder.writeShort(cre.id)
-                    .writeUTF(cre.getString("name"))
-                    .writeShort(cre.location.x)
-                    .writeShort(cre.location.y)
-                    .writeShort(cre.location.z);
+        out.writeInt(creatures.size());
+        for (Entity cre : creatures) {
+            out.writeShort(cre.id);
+            out.writeUTF(cre.getString("name"));
+            out.writeShort(cre.location.x);
+            out.writeShort(cre.location.y);
+            out.writeShort(cre.location.z);
             CreatureImage image = (CreatureImage) cre.getAttribute("image");
             if (image instanceof DefaultCreatureImage) {
                 DefaultCreatureImage defaultImage = (DefaultCreatureImage) image;
-                builder.writeShort(0)
-                        .writeShort(defaultImage.getSpriteIndex())
-                        .writeShort(defaultImage.getWidth())
-                        .writeShort(defaultImage.getHeight());
+                out.writeShort(0);
+                out.writeShort(defaultImage.getSpriteIndex());
+                out.writeShort(defaultImage.getWidth());
+                out.writeShort(defaultImage.getHeight());
             } else if (image instanceof CustomPlayerImage) {
                 CustomPlayerImage customImage = (CustomPlayerImage) image;
-                builder.writeShort(1)
-                        .writeShort(customImage.head)
-                        .writeShort(customImage.chest)
-                        .writeShort(customImage.legs)
-                        .writeShort(customImage.arms)
-                        .writeShort(customImage.weapon)
-                        .writeShort(customImage.shield);
+                out.writeShort(1);
+                out.writeShort(customImage.head);
+                out.writeShort(customImage.chest);
+                out.writeShort(customImage.legs);
+                out.writeShort(customImage.arms);
+                out.writeShort(customImage.weapon);
+                out.writeShort(customImage.shield);
             }
-        });
-
-        return builder.build();
+        }
     }
 
     public Message setFocus(int id, boolean isAdmin) {
@@ -124,6 +279,8 @@ public class GridiaMessageToClientBuilder {
                 .set("size", size)
                 .set("depth", depth)
                 .set("sectorSize", sectorSize)
+                .set("binaryMessages", BINARY_MESSAGES_VERSION)
+                .set("compactSectors", COMPACT_SECTORS_VERSION)
                 .build();
     }
 
@@ -152,24 +309,44 @@ public class GridiaMessageToClientBuilder {
         return chat("WORLD", text, loc);
     }
 
-    public Message updateTile(Coord loc, Tile tile) {
-        return new JsonMessageBuilder()
-                .type("TileUpdate")
+    // the same Chat message, encoded once for sending to many clients
+    public EncodedMessage broadcastChat(String user, String text, Coord loc) {
+        return EncodedMessage.json("Chat")
+                .set("user", user)
+                .set("text", text)
                 .set("loc", loc)
-                .set("item", tile.item.getItem().id)
-                .set("quantity", tile.item.getQuantity())
-                .set("floor", tile.floor)
                 .build();
     }
 
-    public Message updateContainerSlot(Container container, int slotIndex) {
+    public EncodedMessage broadcastChat(String text, Coord loc) {
+        return broadcastChat("WORLD", text, loc);
+    }
+
+    public EncodedMessage updateTile(Coord loc, int floor, ItemInstance item) {
+        int itemId = item.getItem().id;
+        int quantity = item.getQuantity();
+        return EncodedMessage.json("TileUpdate")
+                .supersedes(loc.x, loc.y, loc.z)
+                .set("loc", loc)
+                .set("item", itemId)
+                .set("quantity", quantity)
+                .set("floor", floor)
+                .binary(TILE_UPDATE, out -> writeCoord(out, loc).writeVarInt(itemId).writeVarInt(quantity).writeVarInt(floor))
+                .build();
+    }
+
+    public EncodedMessage updateContainerSlot(Container container, int slotIndex) {
         ItemInstance item = container.get(slotIndex);
-        return new JsonMessageBuilder()
-                .type("ContainerUpdate")
-                .set("id", container.id)
+        int id = container.id;
+        int itemId = item.getItem().id;
+        int quantity = item.getQuantity();
+        return EncodedMessage.json("ContainerUpdate")
+                .supersedes(id, slotIndex)
+                .set("id", id)
                 .set("index", slotIndex)
-                .set("item", item.getItem().id)
-                .set("quantity", item.getQuantity())
+                .set("item", itemId)
+                .set("quantity", quantity)
+                .binary(CONTAINER_UPDATE, out -> out.writeVarInt(id).writeVarInt(slotIndex).writeVarInt(itemId).writeVarInt(quantity))
                 .build();
     }
 
@@ -180,11 +357,11 @@ public class GridiaMessageToClientBuilder {
                 .build();
     }
 
-    public Message animation(String name, Coord loc) {
-        return new JsonMessageBuilder()
-                .type("Animation")
+    public EncodedMessage animation(String name, Coord loc) {
+        return EncodedMessage.json("Animation")
                 .set("name", name)
                 .set("loc", loc)
+                .binary(ANIMATION, out -> writeCoord(out.writeString(name), loc))
                 .build();
     }
 
@@ -210,12 +387,24 @@ public class GridiaMessageToClientBuilder {
                 .build();
     }
 
-    public Message setLife(Entity entity) {
-        return new JsonMessageBuilder()
-                .type("SetLife")
-                .set("id", entity.id)
-                .set("currentLife", entity.getAttribute("life"))
-                .set("maxLife", entity.getAttribute("maxLife"))
+    public EncodedMessage setLife(Entity entity) {
+        int id = entity.id;
+        Object life = entity.getAttribute("life");
+        Object maxLife = entity.getAttribute("maxLife");
+        return EncodedMessage.json("SetLife")
+                .supersedes(id)
+                .set("id", id)
+                .set("currentLife", life)
+                .set("maxLife", maxLife)
+                .binary(SET_LIFE, out -> out.writeVarInt(id).writeSignedVarInt(intValue(life)).writeSignedVarInt(intValue(maxLife)))
                 .build();
     }
+
+    private static CompactOutput writeCoord(CompactOutput out, Coord loc) {
+        return out.writeVarInt(loc.x).writeVarInt(loc.y).writeVarInt(loc.z);
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
 }
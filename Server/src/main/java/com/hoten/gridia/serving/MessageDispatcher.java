@@ -0,0 +1,63 @@
+package com.hoten.gridia.serving;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hoten.servingjava.message.JsonMessageHandler;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Hands a message to its handler for transports that do their own reading.
+ * Like everywhere else, a message's handler is the class in the protocols
+ * package named after the message's type.
+ */
+public class MessageDispatcher {
+
+    private final String _protocolsPackage;
+    private final Map<String, Method> _handlers = new ConcurrentHashMap<>();
+
+    public MessageDispatcher(String protocolsPackage) {
+        _protocolsPackage = protocolsPackage;
+    }
+
+    public void dispatch(ConnectionToGridiaClientHandler connection, String type, byte[] data, boolean compressed) throws IOException {
+        Method handle = _handlers.computeIfAbsent(type, this::findHandler);
+        if (compressed) {
+            data = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(data)));
+        }
+        JsonObject json = new JsonParser().parse(new String(data, StandardCharsets.UTF_8)).getAsJsonObject();
+        try {
+            handle.invoke(handle.getDeclaringClass().newInstance(), connection, json);
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } catch (InstantiationException | IllegalAccessException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private Method findHandler(String type) {
+        try {
+            Class<?> handler = Class.forName(_protocolsPackage + "." + type);
+            if (JsonMessageHandler.class.isAssignableFrom(handler)) {
+                Method handle = handler.getDeclaredMethod("handle", ConnectionToGridiaClientHandler.class, JsonObject.class);
+                handle.setAccessible(true);
+                return handle;
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException ex) {
+        }
+        throw new IllegalArgumentException("No such protocol: " + type);
+    }
+}
@@ -0,0 +1,360 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.servingjava.SocketHandler;
+import com.hoten.servingjava.SocketHandlerImpl;
+import com.hoten.servingjava.message.Message;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A client connection on a non-blocking channel. It speaks the same protocol
+ * as SocketHandlerImpl: first the client files handshake, then frames of data
+ * length, type, compressed flag and data. Reads and writes happen on the
+ * selector thread through direct buffers; senders only append to the pending
+ * bytes, and wait only if the client has fallen a long way behind.
+ */
+public class NioSocketHandler implements SocketHandler {
+
+    private static final int MAX_FRAME = 1 << 20; // from a client, anything bigger is junk
+    private static final int MAX_PENDING = 1 << 20; // bytes waiting on the socket before senders wait
+    private static final int MAX_INBOX = 256; // messages waiting on a handler before reading pauses
+
+    private enum State {
+
+        FILE_REQUEST, FILES_RECEIVED, MESSAGES
+    }
+
+    private final SocketChannel _channel;
+    private final NioTransport _transport;
+    private final NioTransport.IoLoop _loop;
+    private final DataOutputStream _out;
+    private final SocketHandler _encoder;
+    private final ByteBuffer _writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+    private ByteBuffer _readBuffer = ByteBuffer.allocateDirect(8 * 1024);
+    private ByteBuffer _pending = ByteBuffer.allocate(8 * 1024); // guarded by this
+    private final AtomicBoolean _writeRequested = new AtomicBoolean();
+    private final ArrayDeque<Runnable> _inbox = new ArrayDeque<>();
+    private boolean _handling, _readPaused; // guarded by _inbox
+    private State _state = State.FILE_REQUEST;
+    private int _needed;
+    private SelectionKey _key;
+    private ConnectionToGridiaClientHandler _client;
+    private Runnable _onConnectionSettled;
+    private boolean _closed; // guarded by this
+
+    NioSocketHandler(SocketChannel channel, NioTransport transport, NioTransport.IoLoop loop) throws IOException {
+        _channel = channel;
+        _transport = transport;
+        _loop = loop;
+        _out = new DataOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                enqueue(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                enqueue(b, off, len);
+            }
+        });
+        // the library frames its own messages, so lend it the pending bytes as its socket
+        _encoder = new SocketHandlerImpl(new StreamSocket(new ByteArrayInputStream(new byte[0]), _out));
+    }
+
+    private static class StreamSocket extends Socket {
+
+        private final InputStream _in;
+        private final OutputStream _out;
+
+        StreamSocket(InputStream in, OutputStream out) {
+            _in = in;
+            _out = out;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return _in;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return _out;
+        }
+    }
+
+    /**
+     * Starts the handshake and returns; onConnectionSettled is called once
+     * the client has its files.
+     */
+    @Override
+    public void start(Runnable onConnectionSettled, SocketHandler topLevelSocketHandler) throws IOException {
+        _client = (ConnectionToGridiaClientHandler) topLevelSocketHandler;
+        _onConnectionSettled = onConnectionSettled;
+        _transport.getClientFiles().writeHashes(_out);
+        _loop.execute(() -> {
+            try {
+                _key = _loop.register(_channel, SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+            } catch (ClosedChannelException ex) {
+                close();
+            }
+        });
+    }
+
+    @Override
+    public void send(Message message) throws IOException {
+        _encoder.send(message);
+    }
+
+    @Override
+    public DataOutputStream getOutputStream() {
+        return _out;
+    }
+
+    // everything arriving is read by the selector
+    @Override
+    public DataInputStream getInputStream() {
+        return new DataInputStream(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private void enqueue(byte[] bytes, int offset, int length) throws IOException {
+        synchronized (this) {
+            while (_pending.position() >= MAX_PENDING && !_closed) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            if (_closed) {
+                throw new IOException("Connection closed.");
+            }
+            if (_pending.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(_pending.capacity() * 2, _pending.position() + length));
+                _pending.flip();
+                grown.put(_pending);
+                _pending = grown;
+            }
+            _pending.put(bytes, offset, length);
+        }
+        if (_writeRequested.compareAndSet(false, true)) {
+            _loop.execute(() -> {
+                _writeRequested.set(false);
+                setInterest(SelectionKey.OP_WRITE, true);
+            });
+        }
+    }
+
+    // selector thread only
+    private void setInterest(int op, boolean on) {
+        if (_key != null && _key.isValid()) {
+            _key.interestOps(on ? _key.interestOps() | op : _key.interestOps() & ~op);
+        }
+    }
+
+    void onWritable() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    _pending.flip();
+                    ByteBuffer chunk = _pending.duplicate();
+                    chunk.limit(chunk.position() + Math.min(chunk.remaining(), _writeBuffer.remaining()));
+                    _writeBuffer.put(chunk);
+                    _pending.position(chunk.position());
+                    _pending.compact();
+                    notifyAll();
+                }
+                _writeBuffer.flip();
+                _channel.write(_writeBuffer);
+                boolean written = !_writeBuffer.hasRemaining();
+                _writeBuffer.compact();
+                if (!written) {
+                    return;
+                }
+                synchronized (this) {
+                    if (_pending.position() == 0) {
+                        setInterest(SelectionKey.OP_WRITE, false);
+                        return;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            close();
+        }
+    }
+
+    void onReadable() {
+        try {
+            _needed = 0;
+            if (_channel.read(_readBuffer) < 0) {
+                close();
+                return;
+            }
+            _readBuffer.flip();
+            while (readNext()) {
+            }
+            _readBuffer.compact();
+            if (_needed > _readBuffer.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(_needed);
+                _readBuffer.flip();
+                grown.put(_readBuffer);
+                _readBuffer = grown;
+            }
+        } catch (IOException | RuntimeException ex) {
+            close();
+        }
+    }
+
+    // false once the buffer runs out
+    private boolean readNext() throws IOException {
+        switch (_state) {
+            case FILE_REQUEST:
+                String json = readUTF(_readBuffer);
+                if (json == null) {
+                    return false;
+                }
+                List<String> names = _transport.getClientFiles().parseRequest(json);
+                _state = State.FILES_RECEIVED;
+                deliver(() -> sendFiles(names));
+                return true;
+            case FILES_RECEIVED:
+                if (!_readBuffer.hasRemaining()) {
+                    return false;
+                }
+                _readBuffer.get(); // the client is done updating its files
+                _state = State.MESSAGES;
+                deliver(_onConnectionSettled);
+                return true;
+            default:
+                return readFrame(_readBuffer);
+        }
+    }
+
+    private String readUTF(ByteBuffer in) throws IOException {
+        if (in.remaining() < 2) {
+            return null;
+        }
+        int length = 2 + (in.getShort(in.position()) & 0xFFFF);
+        if (in.remaining() < length) {
+            _needed = length;
+            return null;
+        }
+        byte[] utf = new byte[length];
+        in.get(utf);
+        return new DataInputStream(new ByteArrayInputStream(utf)).readUTF();
+    }
+
+    private boolean readFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < 6) {
+            return false;
+        }
+        int dataLength = in.getInt(in.position());
+        if (dataLength < 0 || dataLength > MAX_FRAME) {
+            throw new IOException("Message too large: " + dataLength);
+        }
+        int frameLength = 4 + 2 + (in.getShort(in.position() + 4) & 0xFFFF) + 1 + dataLength;
+        if (in.remaining() < frameLength) {
+            _needed = frameLength;
+            return false;
+        }
+        in.getInt();
+        String type = readUTF(in);
+        boolean compressed = in.get() != 0;
+        byte[] data = new byte[dataLength];
+        in.get(data);
+        deliver(() -> handle(type, data, compressed));
+        return true;
+    }
+
+    private void sendFiles(List<String> names) {
+        try {
+            _transport.getClientFiles().writeFiles(_out, names);
+        } catch (IOException ex) {
+            close();
+        }
+    }
+
+    private void handle(String type, byte[] data, boolean compressed) {
+        if (isClosed()) {
+            return;
+        }
+        try {
+            _transport.getDispatcher().dispatch(_client, type, data, compressed);
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(NioSocketHandler.class.getName()).log(Level.SEVERE, null, ex);
+            close();
+        }
+    }
+
+    // messages are handled on the transport's pool, in order, one at a time
+    private void deliver(Runnable work) {
+        synchronized (_inbox) {
+            _inbox.add(work);
+            if (_inbox.size() >= MAX_INBOX && !_readPaused) {
+                _readPaused = true;
+                _loop.execute(() -> setInterest(SelectionKey.OP_READ, false));
+            }
+            if (_handling) {
+                return;
+            }
+            _handling = true;
+        }
+        _transport.getHandlers().execute(this::handleInbox);
+    }
+
+    private void handleInbox() {
+        while (true) {
+            Runnable work;
+            synchronized (_inbox) {
+                work = _inbox.poll();
+                if (work == null) {
+                    _handling = false;
+                    return;
+                }
+                if (_readPaused && _inbox.size() < MAX_INBOX / 2) {
+                    _readPaused = false;
+                    _loop.execute(() -> setInterest(SelectionKey.OP_READ, true));
+                }
+            }
+            work.run();
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return _closed;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            notifyAll();
+        }
+        try {
+            _channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(NioSocketHandler.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        if (_client != null) {
+            deliver(() -> _transport.closed(_client));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.hoten.gridia.serving;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves clients from a handful of selector threads instead of a thread per
+ * client. Accepted channels still become connections through
+ * ServingGridia.makeNewConnection; their bytes are moved by the selectors,
+ * and their messages are handled on a shared pool, one at a time per client.
+ */
+public class NioTransport {
+
+    private final ServingGridia _server;
+    private final int _port;
+    private final ClientFiles _clientFiles;
+    private final MessageDispatcher _dispatcher;
+    private final IoLoop[] _loops;
+    private final AtomicInteger _nextLoop = new AtomicInteger();
+    private final ExecutorService _handlers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Message handler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ServerSocketChannel _acceptor;
+
+    public NioTransport(ServingGridia server, int port, ClientFiles clientFiles, MessageDispatcher dispatcher, int selectorThreads) throws IOException {
+        _server = server;
+        _port = port;
+        _clientFiles = clientFiles;
+        _dispatcher = dispatcher;
+        _loops = new IoLoop[Math.max(1, selectorThreads)];
+        for (int i = 0; i < _loops.length; i++) {
+            _loops[i] = new IoLoop("NIO selector " + i);
+        }
+    }
+
+    public void start() throws IOException {
+        _acceptor = ServerSocketChannel.open();
+        _acceptor.bind(new InetSocketAddress(_port));
+        for (IoLoop loop : _loops) {
+            loop.start();
+        }
+        Thread acceptThread = new Thread(this::acceptLoop, "NIO acceptor");
+        acceptThread.start();
+    }
+
+    private void acceptLoop() {
+        while (_acceptor.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = _acceptor.accept();
+            } catch (ClosedChannelException ex) {
+                return;
+            } catch (IOException ex) {
+                Logger.getLogger(NioTransport.class.getName()).log(Level.SEVERE, null, ex);
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                ConnectionToGridiaClientHandler client = _server.makeNewConnection(channel.socket());
+                client.start(() -> _server.onTransportClientSettled(client), client);
+            } catch (IOException | InstantiationException | IllegalAccessException ex) {
+                Logger.getLogger(NioTransport.class.getName()).log(Level.SEVERE, null, ex);
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                }
+            }
+        }
+    }
+
+    public void stop() throws IOException {
+        _acceptor.close();
+        for (IoLoop loop : _loops) {
+            loop.stop();
+        }
+    }
+
+    // the socket handler for a channel accepted by this transport
+    public NioSocketHandler newSocketHandler(SocketChannel channel) throws IOException {
+        IoLoop loop = _loops[Math.floorMod(_nextLoop.getAndIncrement(), _loops.length)];
+        return new NioSocketHandler(channel, this, loop);
+    }
+
+    ClientFiles getClientFiles() {
+        return _clientFiles;
+    }
+
+    MessageDispatcher getDispatcher() {
+        return _dispatcher;
+    }
+
+    ExecutorService getHandlers() {
+        return _handlers;
+    }
+
+    void closed(ConnectionToGridiaClientHandler client) {
+        _server.onTransportClientClose(client);
+    }
+
+    /**
+     * One selector and the thread that runs it. Anything that touches the
+     * selector's keys from another thread goes through execute.
+     */
+    static class IoLoop implements Runnable {
+
+        private final String _name;
+        private final Selector _selector;
+        private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean _running;
+
+        IoLoop(String name) throws IOException {
+            _name = name;
+            _selector = Selector.open();
+        }
+
+        void start() {
+            _running = true;
+            new Thread(this, _name).start();
+        }
+
+        void stop() {
+            _running = false;
+            _selector.wakeup();
+        }
+
+        void execute(Runnable task) {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+
+        SelectionKey register(SocketChannel channel, int ops, NioSocketHandler handler) throws ClosedChannelException {
+            return channel.register(_selector, ops, handler);
+        }
+
+        @Override
+        public void run() {
+            while (_running) {
+                try {
+                    _selector.select();
+                } catch (IOException ex) {
+                    Logger.getLogger(NioTransport.class.getName()).log(Level.SEVERE, null, ex);
+                    return;
+                }
+                Runnable task;
+                while ((task = _tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioSocketHandler handler = (NioSocketHandler) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        handler.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        handler.onWritable();
+                    }
+                }
+            }
+            try {
+                _selector.close();
+            } catch (IOException ex) {
+                Logger.getLogger(NioTransport.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+}
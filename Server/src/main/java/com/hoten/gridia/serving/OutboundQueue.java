@@ -0,0 +1,202 @@
+package com.hoten.gridia.serving;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The writes waiting to go out to one client. Senders only ever add to the
+ * queue; a writer borrowed from the executor does the blocking socket writes,
+ * so a slow client holds up nobody but itself. When the queue is full, the
+ * overflow policy decides whether to drop writes that a newer one supersedes
+ * or to give up on the client.
+ *
+ * The writer takes whatever has queued up as one batch, optionally after
+ * waiting out a flush window for more to arrive. Superseded writes in a batch
+ * are collapsed, and the batch ends with a single flush.
+ */
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+
+        DISCONNECT, DROP_SUPERSEDED
+    }
+
+    public interface Write {
+
+        void run() throws IOException;
+    }
+
+    private static class Entry {
+
+        final String key;
+        final Write write;
+
+        Entry(String key, Write write) {
+            this.key = key;
+            this.write = write;
+        }
+    }
+
+    private final ArrayDeque<Entry> _entries = new ArrayDeque<>();
+    private final int _limit;
+    private final OverflowPolicy _policy;
+    private final Executor _writers;
+    private final Runnable _onFailure;
+    private final long _flushWindowMillis;
+    private final Write _flush;
+    private boolean _draining, _closed;
+    private int _peakDepth;
+    private long _dropped, _collapsed, _batches, _written;
+
+    public OutboundQueue(int limit, OverflowPolicy policy, Executor writers, Runnable onFailure) {
+        this(limit, policy, writers, onFailure, 0, () -> {
+        });
+    }
+
+    /**
+     * onFailure runs on a writer once the client overflows or a write fails,
+     * and flush after each batch of writes.
+     */
+    public OutboundQueue(int limit, OverflowPolicy policy, Executor writers, Runnable onFailure, long flushWindowMillis, Write flush) {
+        _limit = limit;
+        _policy = policy;
+        _writers = writers;
+        _onFailure = onFailure;
+        _flushWindowMillis = flushWindowMillis;
+        _flush = flush;
+    }
+
+    /**
+     * Queues a write. Writes with the same non-null key supersede each other.
+     * Returns false if the client has been given up on.
+     */
+    public boolean offer(String key, Write write) {
+        synchronized (this) {
+            if (_closed) {
+                return false;
+            }
+            if (_entries.size() >= _limit && (_policy == OverflowPolicy.DISCONNECT || dropSuperseded(key) == 0)) {
+                closeLater();
+                return false;
+            }
+            _entries.add(new Entry(key, write));
+            _peakDepth = Math.max(_peakDepth, _entries.size());
+            if (_draining) {
+                return true;
+            }
+            _draining = true;
+        }
+        _writers.execute(this::drain);
+        return true;
+    }
+
+    private int dropSuperseded(String incomingKey) {
+        int dropped = collapse(incomingKey);
+        _dropped += dropped;
+        return dropped;
+    }
+
+    // keeps only the newest write for each key, counting the incoming one
+    private int collapse(String incomingKey) {
+        Set<String> newer = new HashSet<>();
+        if (incomingKey != null) {
+            newer.add(incomingKey);
+        }
+        int dropped = 0;
+        Iterator<Entry> it = _entries.descendingIterator();
+        while (it.hasNext()) {
+            String key = it.next().key;
+            if (key != null && !newer.add(key)) {
+                it.remove();
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    private void drain() {
+        while (true) {
+            if (_flushWindowMillis > 0) {
+                try {
+                    Thread.sleep(_flushWindowMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            List<Entry> batch;
+            synchronized (this) {
+                if (_closed || _entries.isEmpty()) {
+                    _draining = false;
+                    return;
+                }
+                _collapsed += collapse(null);
+                batch = new ArrayList<>(_entries);
+                _entries.clear();
+                _batches++;
+                _written += batch.size();
+            }
+            try {
+                for (Entry entry : batch) {
+                    entry.write.run();
+                }
+                _flush.run();
+            } catch (IOException | RuntimeException ex) {
+                if (ex instanceof RuntimeException) {
+                    Logger.getLogger(OutboundQueue.class.getName()).log(Level.SEVERE, "Write to client failed", ex);
+                }
+                // the client won't get the rest, so give up on it either way
+                synchronized (this) {
+                    _draining = false;
+                }
+                closeLater();
+                return;
+            }
+        }
+    }
+
+    // for when the client is going away anyway
+    public synchronized void close() {
+        _closed = true;
+        _entries.clear();
+    }
+
+    private synchronized void closeLater() {
+        if (!_closed) {
+            _closed = true;
+            _entries.clear();
+            _writers.execute(_onFailure);
+        }
+    }
+
+    public synchronized int getDepth() {
+        return _entries.size();
+    }
+
+    public synchronized int getPeakDepth() {
+        return _peakDepth;
+    }
+
+    public synchronized long getDropped() {
+        return _dropped;
+    }
+
+    public synchronized long getCollapsed() {
+        return _collapsed;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return _batches == 0 ? 0 : (double) _written / _batches;
+    }
+
+    public synchronized boolean isClosed() {
+        return _closed;
+    }
+}
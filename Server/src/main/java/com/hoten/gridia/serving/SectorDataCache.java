@@ -0,0 +1,189 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Sector;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SectorData message of each sector, encoded once per version of the
+ * sector. Every request for an unchanged sector is answered with the same
+ * bytes. Entries go away with their sector once it is unloaded.
+ *
+ * A client that kept a sector from an earlier visit sends the hash of its
+ * tiles along with the request. If they are still current, or one of the last
+ * few states of the sector, it is sent a delta instead of the whole sector.
+ * Clients follow a sector through tile updates too, so with recordTiles
+ * called before each tile change, every state they could be left with is
+ * kept, not just the ones requested.
+ *
+ * Clients that asked for compact sectors get SectorDataCompact in place of
+ * SectorData, also encoded at most once per version.
+ */
+public class SectorDataCache {
+
+    private static final int HISTORY = 3; // earlier tile states kept per sector
+
+    private static class Entry {
+
+        final int version;
+        final byte[] tiles;
+        final String hash;
+        final EncodedMessage data;
+        final Map<String, byte[]> history; // by hash, oldest first, guarded by itself
+        int recordedVersion = -1; // guarded by history
+        volatile EncodedMessage unchanged, compact;
+
+        Entry(int version, byte[] tiles, String hash, EncodedMessage data, Map<String, byte[]> history) {
+            this.version = version;
+            this.tiles = tiles;
+            this.hash = hash;
+            this.data = data;
+            this.history = history;
+        }
+    }
+
+    private final GridiaMessageToClientBuilder _messageBuilder;
+    private final Map<Sector, Entry> _entries = Collections.synchronizedMap(new WeakHashMap<>());
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _unchanged = new AtomicLong();
+    private final AtomicLong _deltas = new AtomicLong();
+
+    public SectorDataCache(GridiaMessageToClientBuilder messageBuilder) {
+        _messageBuilder = messageBuilder;
+    }
+
+    public EncodedMessage get(Sector sector) {
+        return current(sector).data;
+    }
+
+    // clientHash may be null, when the client has no copy of the sector
+    public EncodedMessage get(Sector sector, String clientHash, boolean compact) {
+        Entry entry = current(sector);
+        if (clientHash == null) {
+            return whole(sector, entry, compact);
+        }
+        if (clientHash.equals(entry.hash)) {
+            _unchanged.incrementAndGet();
+            EncodedMessage unchanged = entry.unchanged;
+            if (unchanged == null) {
+                entry.unchanged = unchanged = _messageBuilder.sectorDelta(sector, entry.tiles, entry.tiles);
+            }
+            return unchanged;
+        }
+        byte[] clientTiles = entry.history.get(clientHash);
+        if (clientTiles != null) {
+            _deltas.incrementAndGet();
+            return _messageBuilder.sectorDelta(sector, entry.tiles, clientTiles);
+        }
+        return whole(sector, entry, compact);
+    }
+
+    private EncodedMessage whole(Sector sector, Entry entry, boolean compact) {
+        if (!compact) {
+            return entry.data;
+        }
+        EncodedMessage message = entry.compact;
+        if (message == null) {
+            entry.compact = message = _messageBuilder.sectorDataCompact(sector);
+        }
+        return message;
+    }
+
+    private Entry current(Sector sector) {
+        // read before encoding, so a change made while encoding misses next time
+        int version = sector.getVersion();
+        Entry entry = _entries.get(sector);
+        if (entry != null && entry.version == version) {
+            _hits.incrementAndGet();
+            return entry;
+        }
+        _misses.incrementAndGet();
+        byte[] tiles = _messageBuilder.sectorTiles(sector);
+        String hash = hash(tiles);
+        EncodedMessage data = _messageBuilder.sectorData(sector, tiles);
+        Map<String, byte[]> history = new LinkedHashMap<>();
+        Entry current = new Entry(version, tiles, hash, data, Collections.synchronizedMap(history));
+        if (entry == null) {
+            _entries.put(sector, current);
+            return current;
+        }
+        // replaced under the old history's lock, so nothing recordTiles keeps in between is lost
+        synchronized (entry.history) {
+            history.putAll(entry.history);
+            history.remove(hash);
+            if (!entry.hash.equals(hash)) {
+                remember(history, entry.hash, entry.tiles);
+            }
+            _entries.put(sector, current);
+        }
+        return current;
+    }
+
+    /**
+     * Keeps the sector's tiles as they are now among its recent states, if it
+     * has been sent to anyone. For calling before each tile change, under the
+     * sector's lock.
+     */
+    public void recordTiles(Sector sector) {
+        int version = sector.getVersion();
+        for (Entry entry = _entries.get(sector); entry != null; entry = _entries.get(sector)) {
+            synchronized (entry.history) {
+                if (_entries.get(sector) != entry) {
+                    continue; // replaced meanwhile
+                }
+                if (version == entry.version || version == entry.recordedVersion) {
+                    return; // the entry itself, or already kept
+                }
+                entry.recordedVersion = version;
+                byte[] tiles = _messageBuilder.sectorTiles(sector);
+                String hash = hash(tiles);
+                if (!hash.equals(entry.hash)) {
+                    remember(entry.history, hash, tiles);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void remember(Map<String, byte[]> history, String hash, byte[] tiles) {
+        history.remove(hash);
+        history.put(hash, tiles);
+        for (Iterator<String> oldest = history.keySet().iterator(); history.size() > HISTORY;) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    // the same hash the client takes of the tiles it keeps
+    public static String hash(byte[] tiles) {
+        try {
+            return String.format("%032x", new BigInteger(1, MessageDigest.getInstance("MD5").digest(tiles)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public long getHits() {
+        return _hits.get();
+    }
+
+    public long getMisses() {
+        return _misses.get();
+    }
+
+    public long getUnchanged() {
+        return _unchanged.get();
+    }
+
+    public long getDeltas() {
+        return _deltas.get();
+    }
+}
@@ -0,0 +1,109 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Sector;
+import com.hoten.gridia.map.TileMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which clients have which sectors loaded, looked up from either side. Sectors
+ * are keyed by their index, so a sector that was evicted and loaded again
+ * keeps its subscribers.
+ */
+public class SectorSubscriptions<T> {
+
+    private final TileMap _tileMap;
+    private final Map<Integer, Set<T>> _subscribers = new ConcurrentHashMap<>();
+    private final Map<T, Set<Integer>> _subscriptions = new ConcurrentHashMap<>();
+    private final Set<T> _gone = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    public SectorSubscriptions(TileMap tileMap) {
+        _tileMap = tileMap;
+    }
+
+    /**
+     * Does nothing for a client already passed to unsubscribeAll, e.g. when
+     * its last request is handled after it disconnected.
+     */
+    public void subscribe(T client, Sector sector) {
+        int index = _tileMap.sectorIndex(sector);
+        // under the client's entry, so unsubscribeAll can't run in between
+        _subscriptions.compute(client, (key, indexes) -> {
+            if (_gone.contains(key)) {
+                return indexes;
+            }
+            Set<Integer> subscribed = indexes != null ? indexes : ConcurrentHashMap.newKeySet();
+            subscribed.add(index);
+            _subscribers.computeIfAbsent(index, i -> ConcurrentHashMap.newKeySet()).add(key);
+            return subscribed;
+        });
+    }
+
+    public void unsubscribe(T client, Sector sector) {
+        unsubscribe(client, _tileMap.sectorIndex(sector));
+    }
+
+    public void unsubscribe(T client, int index) {
+        Set<Integer> subscriptions = _subscriptions.get(client);
+        if (subscriptions != null) {
+            subscriptions.remove(index);
+        }
+        getSubscribers(index).remove(client);
+    }
+
+    /**
+     * For a client that is going away. It can't subscribe again afterwards.
+     */
+    public void unsubscribeAll(T client) {
+        _subscriptions.compute(client, (key, indexes) -> {
+            _gone.add(key);
+            if (indexes != null) {
+                indexes.forEach(index -> getSubscribers(index).remove(key));
+            }
+            return null;
+        });
+    }
+
+    public boolean isSubscribed(T client, Sector sector) {
+        Set<Integer> subscriptions = _subscriptions.get(client);
+        return subscriptions != null && subscriptions.contains(_tileMap.sectorIndex(sector));
+    }
+
+    public boolean hasSubscribers(Sector sector) {
+        return !getSubscribers(sector).isEmpty();
+    }
+
+    public Set<T> getSubscribers(Sector sector) {
+        return getSubscribers(_tileMap.sectorIndex(sector));
+    }
+
+    /**
+     * Everyone subscribed to a sector within radius tiles of the location, on
+     * its level, counted once. The map wraps around at its edges.
+     */
+    public Set<T> getSubscribersNear(int x, int y, int z, int radius) {
+        int size = _tileMap.sectorSize, across = _tileMap.sectorsAcross;
+        int firstX = Math.floorDiv(x - radius, size), firstY = Math.floorDiv(y - radius, size);
+        int spanX = Math.min(Math.floorDiv(x + radius, size) - firstX + 1, across);
+        int spanY = Math.min(Math.floorDiv(y + radius, size) - firstY + 1, across);
+        Set<T> near = new HashSet<>();
+        for (int i = 0; i < spanX; i++) {
+            for (int j = 0; j < spanY; j++) {
+                near.addAll(getSubscribers(_tileMap.sectorIndex(Math.floorMod(firstX + i, across), Math.floorMod(firstY + j, across), z)));
+            }
+        }
+        return near;
+    }
+
+    private Set<T> getSubscribers(int index) {
+        return _subscribers.getOrDefault(index, Collections.emptySet());
+    }
+
+    public Set<Integer> getSubscriptions(T client) {
+        return _subscriptions.getOrDefault(client, Collections.emptySet());
+    }
+}
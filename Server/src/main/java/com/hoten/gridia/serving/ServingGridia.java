@@ -1,5 +1,6 @@
 package com.hoten.gridia.serving;
 
+import com.google.gson.JsonObject;
 import com.hoten.gridia.scripting.*;
 import groovy.lang.Binding;
 import groovy.lang.GroovyShell;
@@ -24,6 +25,7 @@ import com.hoten.gridia.content.ItemUse;
 import com.hoten.gridia.content.ItemUseException;
 import com.hoten.gridia.content.Monster;
 import com.hoten.gridia.content.WorldContentLoader;
+import com.hoten.gridia.journal.Journal;
 import com.hoten.gridia.map.Sector;
 import com.hoten.gridia.map.Tile;
 import com.hoten.gridia.map.TileMap;
@@ -31,6 +33,7 @@ import com.hoten.gridia.serializers.GridiaGson;
 import com.hoten.servingjava.filetransferring.ServingFileTransferring;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.Socket;
 import com.hoten.servingjava.message.Message;
 import java.util.ArrayList;
@@ -38,7 +41,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -51,10 +62,16 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     public static ServingGridia instance; // :(
 
-    private final ScriptExecutor scriptExecutor = new ScriptExecutor();
+    public enum Transport {
+
+        BLOCKING, NIO, VIRTUAL_THREADS
+    }
+
+    private final ScriptExecutor scriptExecutor = new ScriptExecutor("virtual".equals(System.getProperty("gridia.scripts")));
     private final EventDispatcher eventDispatcher = new EventDispatcher();
     private GroovyShell shell;
     public final GridiaMessageToClientBuilder messageBuilder = new GridiaMessageToClientBuilder();
+    public final SectorDataCache sectorDataCache = new SectorDataCache(messageBuilder);
     public final TileMap tileMap;
     public final ContentManager contentManager;
     public final ScriptableUsageProcessing usageProcessor;
@@ -67,22 +84,119 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
     public final String version = "alpha-1.7";
     public final File worldTopDirectory;
     public final Entity worldEntity = new Entity();
+    private final ExecutorService _saveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "World saver");
+        thread.setDaemon(true); // shutdown waits for it instead
+        return thread;
+    });
+    // not the saver, which waits on these writes
+    private final ExecutorService _evictionWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Evicted sector writer");
+        thread.setDaemon(true); // shutdown waits for it instead
+        return thread;
+    });
+    private final AtomicBoolean _saveInProgress = new AtomicBoolean();
+    private final Journal _journal;
+    public final SectorSubscriptions<ConnectionToGridiaClientHandler> sectorSubscriptions;
+    private int _viewRadius = 48; // in tiles, should cover the largest client screen
+    private int _localRadius = 48; // in tiles, how far animations and local chat carry
+    // platform threads in every mode: a writer blocks on its socket while holding the stream's monitor, which would pin a virtual thread
+    private final ExecutorService _outboundWriters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Outbound writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int _outboundLimit = 2048; // messages queued per client
+    private OutboundQueue.OverflowPolicy _overflowPolicy = OutboundQueue.OverflowPolicy.DROP_SUPERSEDED;
+    private long _flushWindowMillis = 5; // how long a client's writer waits for more messages to batch up
+    private final int _port;
+    private final File _clientDataFolder;
+    private final String _localDataFolderName;
+    private Transport _transport = Transport.valueOf(System.getProperty("gridia.transport", "blocking").toUpperCase());
+    private NioTransport _nioTransport;
+    private VirtualThreadTransport _virtualThreadTransport;
 
     public ServingGridia(File world, String mapName, int port, File clientDataFolder, String localDataFolderName) throws IOException {
         super(port, clientDataFolder, localDataFolderName);
+        _port = port;
+        _clientDataFolder = clientDataFolder;
+        _localDataFolderName = localDataFolderName;
         worldTopDirectory = world;
         worldName = world.getName();
         this.mapName = mapName;
         contentManager = new WorldContentLoader(world).load();
         usageProcessor = new ScriptableUsageProcessing(contentManager, eventDispatcher);
         GridiaGson.initialize(contentManager, this);
-        tileMap = TileMap.loadMap(world, mapName);
+        tileMap = TileMap.loadMap(world, mapName, contentManager);
+        tileMap.setWriteExecutor(_evictionWriter);
+        sectorSubscriptions = new SectorSubscriptions<>(tileMap);
+        tileMap.setSectorInUse(sectorSubscriptions::hasSubscribers);
+        tileMap.setBeforeTileChange(sectorDataCache::recordTiles);
         playerFactory = new PlayerFactory(world);
         containerFactory = new ContainerFactory(world);
+        _journal = new Journal(new File(world, "journal"), mapName, contentManager);
+        replayJournal();
         setUpScripting();
         instance = this;
     }
 
+    // applies the changes made after the last checkpoint, then checkpoints them
+    private void replayJournal() throws IOException {
+        Map<Integer, JsonObject> players = new HashMap<>();
+        int replayed = _journal.replay(new Journal.Replayer() {
+            @Override
+            public void itemChanged(int tileIndex, ItemInstance item) {
+                tileMap.setItem(item, tileMap.getCoordFromIndex(tileIndex));
+            }
+
+            @Override
+            public void floorChanged(int tileIndex, int floor) {
+                tileMap.setFloor(tileMap.getCoordFromIndex(tileIndex), floor);
+            }
+
+            @Override
+            public void containerSlotChanged(int containerId, int slot, ItemInstance item) {
+                try {
+                    if (containerFactory.exists(containerId)) {
+                        List<ItemInstance> items = containerFactory.get(containerId).getItems();
+                        if (slot < items.size()) {
+                            items.set(slot, item);
+                        }
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+
+            @Override
+            public void playerAttributeChanged(int playerId, String name, JsonObject value) {
+                try {
+                    if (!players.containsKey(playerId) && playerFactory.exists(playerId)) {
+                        players.put(playerId, playerFactory.readJson(playerId));
+                    }
+                    JsonObject player = players.get(playerId);
+                    if (player != null) {
+                        player.remove(name);
+                        if (value != null) {
+                            player.add(name, value);
+                        }
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+        if (replayed != 0) {
+            tileMap.save();
+            containerFactory.saveAll();
+            for (Map.Entry<Integer, JsonObject> player : players.entrySet()) {
+                playerFactory.write(player.getKey(), GridiaGson.get().toJson(player.getValue()));
+            }
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.INFO, "Replayed {0} journal records.", replayed);
+        }
+        _journal.deleteReplayedSegments();
+    }
+
     private void setUpScripting() throws IOException {
         CompilerConfiguration compilerConfiguration = new CompilerConfiguration();
         compilerConfiguration.setScriptBaseClass(DelegatingScript.class.getName());
@@ -129,26 +243,85 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         eventDispatcher.dispatch(type, target, event);
     }
 
+    public Transport getTransport() {
+        return _transport;
+    }
+
+    // must be called before startServer
+    public void setTransport(Transport transport) {
+        _transport = transport;
+    }
+
+    @Override
+    public void startServer() {
+        if (_transport == Transport.BLOCKING) {
+            super.startServer();
+            return;
+        }
+        try {
+            ClientFiles clientFiles = new ClientFiles(_clientDataFolder, _localDataFolderName);
+            if (_transport == Transport.NIO) {
+                int selectorThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                _nioTransport = new NioTransport(this, _port, clientFiles,
+                        new MessageDispatcher("com.hoten.gridia.serving.protocols"), selectorThreads);
+                _nioTransport.start();
+            } else {
+                _virtualThreadTransport = new VirtualThreadTransport(this, _port, clientFiles);
+                _virtualThreadTransport.start();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
     @Override
     public void setupNewClient(ConnectionToGridiaClientHandler newClient) throws IOException {
         super.setupNewClient(newClient);
+        greet(newClient);
+    }
+
+    private void greet(ConnectionToGridiaClientHandler newClient) throws IOException {
         System.out.println("Client has connected.");
         newClient.send(messageBuilder.initialize(version, worldName, tileMap.size, tileMap.depth, tileMap.sectorSize));
     }
 
+    // the transports other than the library's own report their clients here
+    void onTransportClientSettled(ConnectionToGridiaClientHandler client) {
+        _clients.add(client);
+        try {
+            greet(client);
+        } catch (IOException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+            client.close();
+        }
+    }
+
+    void onTransportClientClose(ConnectionToGridiaClientHandler client) {
+        _clients.remove(client);
+        try {
+            onClientClose(client);
+        } catch (IOException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
     @Override
     protected void onClientClose(ConnectionToGridiaClientHandler client) throws IOException {
+        sectorSubscriptions.unsubscribeAll(client);
         if (client.player != null) {
             removeCreature(client.player.creature);
             savePlayer(client.player);
             Entity cre = client.player.creature;
-            sendToAll(messageBuilder.chat(cre.getAttribute("name") + " has left the building.", cre.location));
+            announceToAll("WORLD", cre.getAttribute("name") + " has left the building.", cre.location);
             playAnimation("WarpOut", cre.location);
         }
     }
 
     @Override
     protected ConnectionToGridiaClientHandler makeNewConnection(Socket newConnection) throws IOException {
+        if (newConnection.getChannel() != null && _nioTransport != null) {
+            return new ConnectionToGridiaClientHandler(_nioTransport.newSocketHandler(newConnection.getChannel()), this);
+        }
         return new ConnectionToGridiaClientHandler(newConnection, this);
     }
 
@@ -161,12 +334,9 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     // :(
     public void grow() {
-        tileMap.forAllTilesLoaded(x -> y -> z -> tile -> {
-            if (tile.item.getItem().growthDelta != 0) {
-                tile.item.age += 1;
-                if (tile.item.age >= tile.item.getItem().growthDelta) {
-                    changeItem(new Coord(x, y, z), contentManager.createItemInstance(tile.item.getItem().growthItem));
-                }
+        tileMap.grow((loc, item) -> {
+            if (tileMap.getItem(loc) == item) {
+                changeItem(loc, contentManager.createItemInstance(item.getItem().growthItem));
             }
         });
     }
@@ -185,12 +355,168 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         super.sendTo(message, c -> c.player != null && pred.test(c));
     }
 
+    public void sendToAll(EncodedMessage message) {
+        sendTo(message, c -> true);
+    }
+
+    public void sendTo(EncodedMessage message, Predicate<ConnectionToGridiaClientHandler> pred) {
+        _clients.forEach(c -> {
+            if (c.player != null && pred.test(c)) {
+                sendTo(message, c);
+            }
+        });
+    }
+
+    public void sendToFirst(EncodedMessage message, Predicate<ConnectionToGridiaClientHandler> pred) {
+        _clients.stream().filter(pred).findFirst().ifPresent(c -> sendTo(message, c));
+    }
+
+    public void sendTo(EncodedMessage message, ConnectionToGridiaClientHandler client) {
+        client.send(message);
+    }
+
+    public ExecutorService getOutboundWriters() {
+        return _outboundWriters;
+    }
+
+    public int getOutboundLimit() {
+        return _outboundLimit;
+    }
+
+    // applies to clients that connect afterwards
+    public void setOutboundLimit(int outboundLimit) {
+        _outboundLimit = outboundLimit;
+    }
+
+    public OutboundQueue.OverflowPolicy getOverflowPolicy() {
+        return _overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OutboundQueue.OverflowPolicy overflowPolicy) {
+        _overflowPolicy = overflowPolicy;
+    }
+
+    public String scriptLatencyReport() {
+        return (String) scriptExecutor.latencyReport();
+    }
+
+    public long getFlushWindowMillis() {
+        return _flushWindowMillis;
+    }
+
+    // applies to clients that connect afterwards
+    public void setFlushWindowMillis(long flushWindowMillis) {
+        _flushWindowMillis = flushWindowMillis;
+    }
+
+    public String outboundQueueReport() {
+        return "Outbound queues (depth/peak/dropped/collapsed, messages per batch): " + _clients.stream()
+                .filter(client -> client.player != null)
+                .map(client -> {
+                    OutboundQueue queue = client.getOutboundQueue();
+                    return String.format("%s %d/%d/%d/%d, %.1f", client.player.getUsername(), queue.getDepth(), queue.getPeakDepth(),
+                            queue.getDropped(), queue.getCollapsed(), queue.getAverageBatchSize());
+                })
+                .collect(Collectors.joining(", "));
+    }
+
+    public int getViewRadius() {
+        return _viewRadius;
+    }
+
+    public void setViewRadius(int viewRadius) {
+        _viewRadius = viewRadius;
+    }
+
+    public int getLocalRadius() {
+        return _localRadius;
+    }
+
+    public void setLocalRadius(int localRadius) {
+        _localRadius = localRadius;
+    }
+
+    /**
+     * True if the sector is within the view radius (plus margin) of the
+     * client's player, on any level. Clients without a player see everything.
+     */
+    public boolean isInView(ConnectionToGridiaClientHandler client, int sx, int sy, int margin) {
+        if (client.player == null) {
+            return true;
+        }
+        Coord loc = client.player.creature.location;
+        int reach = _viewRadius + margin;
+        return distanceToSector(loc.x, sx) <= reach && distanceToSector(loc.y, sy) <= reach;
+    }
+
+    // from a tile to the nearest tile of a row of sectors, around the map's edges
+    private int distanceToSector(int tile, int sectorCoord) {
+        int half = tileMap.sectorSize / 2;
+        int delta = Math.floorMod(tile - (sectorCoord * tileMap.sectorSize + half), tileMap.size);
+        return Math.max(0, Math.min(delta, tileMap.size - delta) - half);
+    }
+
+    // drops the sectors the client's player has moved well away from, and tells the client
+    public void updateView(ConnectionToGridiaClientHandler client) {
+        for (int index : new ArrayList<>(sectorSubscriptions.getSubscriptions(client))) {
+            int sx = index % tileMap.sectorsAcross;
+            int sy = index / tileMap.sectorsAcross % tileMap.sectorsAcross;
+            int sz = index / tileMap.sectorsFloor;
+            if (!isInView(client, sx, sy, tileMap.sectorSize)) {
+                sectorSubscriptions.unsubscribe(client, index);
+                sendTo(messageBuilder.sectorUnload(sx, sy, sz), client);
+            }
+        }
+    }
+
     public void sendToClientsWithSectorLoadedBut(Message message, Sector sector, ConnectionToGridiaClientHandler client) {
-        sendTo(message, c -> c.hasSectorLoaded(sector) && client != c);
+        sendToClientsWithSectorLoaded(message, sector, c -> client != c);
     }
 
     public void sendToClientsWithSectorLoaded(Message message, Sector sector) {
-        sendTo(message, c -> c.hasSectorLoaded(sector));
+        sendToClientsWithSectorLoaded(message, sector, c -> true);
+    }
+
+    // only visits the clients subscribed to the sector
+    public void sendToClientsWithSectorLoaded(Message message, Sector sector, Predicate<ConnectionToGridiaClientHandler> pred) {
+        sectorSubscriptions.getSubscribers(sector).forEach(c -> {
+            if (c.player != null && pred.test(c)) {
+                super.sendTo(message, c);
+            }
+        });
+    }
+
+    public void sendToClientsWithSectorLoaded(EncodedMessage message, Sector sector) {
+        sendToClientsWithSectorLoaded(message, sector, c -> true);
+    }
+
+    public void sendToClientsWithSectorLoaded(EncodedMessage message, Sector sector, Predicate<ConnectionToGridiaClientHandler> pred) {
+        sectorSubscriptions.getSubscribers(sector).forEach(c -> {
+            if (c.player != null && pred.test(c)) {
+                sendTo(message, c);
+            }
+        });
+    }
+
+    public void sendToClientsNear(EncodedMessage message, Coord loc) {
+        sendToClientsNear(message, loc, _localRadius);
+    }
+
+    // only visits the clients subscribed to the sectors within the radius
+    public void sendToClientsNear(EncodedMessage message, Coord loc, int radius) {
+        sectorSubscriptions.getSubscribersNear(loc.x, loc.y, loc.z, radius).forEach(c -> {
+            if (c.player != null) {
+                sendTo(message, c);
+            }
+        });
+    }
+
+    public void sendToClientsWithAreaLoaded(EncodedMessage message, int destIndex) {
+        sendToClientsWithAreaLoaded(message, tileMap.getCoordFromIndex(destIndex));
+    }
+
+    public void sendToClientsWithAreaLoaded(EncodedMessage message, Coord loc) {
+        sendToClientsWithSectorLoaded(message, tileMap.getSectorOf(loc));
     }
 
     public void sendToClientsWithAreaLoaded(Message message, int destIndex) {
@@ -198,11 +524,23 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
     }
 
     public void sendToClientsWithAreaLoaded(Message message, Coord loc) {
-        sendTo(message, c -> c.hasSectorLoaded(tileMap.getSectorOf(loc)));
+        sendToClientsWithSectorLoaded(message, tileMap.getSectorOf(loc));
     }
 
+    // only those in the sectors the client has loaded, the rest arrive with their sectors
     public void sendCreatures(ConnectionToGridiaClientHandler client) {
-        creatures.values().forEach(cre -> sendTo(messageBuilder.addCreature(cre), client));
+        int size = tileMap.sectorSize;
+        for (int index : sectorSubscriptions.getSubscriptions(client)) {
+            Coord corner = new Coord(index % tileMap.sectorsAcross * size, index / tileMap.sectorsAcross % tileMap.sectorsAcross * size, index / tileMap.sectorsFloor);
+            tileMap.getCreatureIndex().findInArea(corner, size, size, 1, cre -> true)
+                    .forEach(cre -> super.sendTo(messageBuilder.addCreature(cre), client));
+        }
+    }
+
+    // a client knows of its own creature, and those in the sectors it has loaded
+    public boolean canSee(ConnectionToGridiaClientHandler client, Entity cre) {
+        return client.player != null && client.player.creature == cre
+                || sectorSubscriptions.isSubscribed(client, tileMap.getSectorOf(cre.location));
     }
 
     public void dropContainerNear(Container container, Coord location) {
@@ -216,7 +554,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
     public void removeCreature(Entity cre) {
         Sector sector = tileMap.getSectorOf(cre.location);
         creatures.remove(cre.id);
-        tileMap.getTile(cre.location).cre = null;
+        tileMap.removeCreature(cre.location, cre);
         cre.retire();
         cre.removeScripts();
         sendToClientsWithSectorLoaded(messageBuilder.removeCreature(cre), sector);
@@ -244,14 +582,78 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         }
         cre.setAttribute("justTeleported", false);
         Sector sectorBefore = tileMap.getSectorOf(cre.location);
-        sendToClientsWithSectorLoaded(messageBuilder.moveCreature(cre, 0, false, onRaft, tellMover), sectorBefore);
+        EncodedMessage stepFrom = messageBuilder.stepFrom(cre, onRaft, tellMover);
         tileMap.wrap(loc);
         Sector sector = tileMap.getSectorOf(loc);
-        tileMap.getTile(cre.location).cre = null;
-        tileMap.getTile(loc).cre = cre;
+        Coord from = cre.location;
+        // before the map changes, so the bumped sector versions cover the new location
         cre.location = loc;
-        sendTo(messageBuilder.moveCreature(cre, timeInMillisecondsToMove, isTeleport, onRaft, tellMover), client -> client.hasSectorLoaded(sector) || client.player.creature == cre);
-        sendTo(messageBuilder.removeCreature(cre), client -> client.player.creature != cre && !client.hasSectorLoaded(sector) && client.hasSectorLoaded(sectorBefore));
+        tileMap.removeCreature(from, cre);
+        tileMap.setCreature(loc, cre);
+        EncodedMessage moveCreature = messageBuilder.moveCreature(cre, timeInMillisecondsToMove, isTeleport, onRaft, tellMover);
+        ConnectionToGridiaClientHandler mover = broadcastMove(cre, sectorBefore, sector, stepFrom, moveCreature);
+        if (mover == null && cre.getBoolean("belongsToPlayer")) {
+            // a player always hears of its own moves, even with neither sector loaded
+            mover = _clients.stream()
+                    .filter(client -> client.player != null && client.player.creature == cre)
+                    .findFirst()
+                    .orElse(null);
+            if (mover != null) {
+                sendTo(moveCreature, mover);
+            }
+        }
+        if (sector != sectorBefore && mover != null) {
+            updateView(mover);
+        }
+    }
+
+    /**
+     * One pass over the subscribers of the sectors a creature moved between.
+     * Those that have both loaded (stay) see it step from and to, those that
+     * only have the old one (leave) see it step off and go away, and those
+     * that only have the new one (enter) are introduced to it as it arrives.
+     * Returns the client of the creature, if it was among them.
+     */
+    private ConnectionToGridiaClientHandler broadcastMove(Entity cre, Sector sectorBefore, Sector sector, EncodedMessage stepFrom, EncodedMessage moveCreature) {
+        Set<ConnectionToGridiaClientHandler> before = sectorSubscriptions.getSubscribers(sectorBefore);
+        Set<ConnectionToGridiaClientHandler> after = sector == sectorBefore ? before : sectorSubscriptions.getSubscribers(sector);
+        ConnectionToGridiaClientHandler mover = null;
+        EncodedMessage removeCreature = null;
+        for (ConnectionToGridiaClientHandler client : before) {
+            if (client.player == null) {
+                continue;
+            }
+            boolean isMover = client.player.creature == cre;
+            if (isMover) {
+                mover = client;
+            }
+            sendTo(stepFrom, client);
+            if (before == after || after.contains(client) || isMover) {
+                sendTo(moveCreature, client);
+            } else {
+                if (removeCreature == null) {
+                    removeCreature = messageBuilder.removeCreature(cre);
+                }
+                sendTo(removeCreature, client);
+            }
+        }
+        if (after != before) {
+            Message addCreature = null;
+            for (ConnectionToGridiaClientHandler client : after) {
+                if (client.player != null && !before.contains(client)) {
+                    if (client.player.creature == cre) {
+                        mover = client;
+                    } else {
+                        if (addCreature == null) {
+                            addCreature = messageBuilder.addCreature(cre);
+                        }
+                        super.sendTo(addCreature, client);
+                    }
+                    sendTo(moveCreature, client);
+                }
+            }
+        }
+        return mover;
     }
 
     public void moveCreatureTo(Entity cre, Coord loc, boolean isTeleport) {
@@ -260,6 +662,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     public void updateCreatureImage(Entity cre) {
         Sector sector = tileMap.getSectorOf(cre.location);
+        sector.bumpVersion(); // the image is part of the sector's data
         sendToClientsWithSectorLoaded(messageBuilder.updateCreatureImage(cre), sector);
     }
 
@@ -317,7 +720,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     public void registerCreature(Entity creature) {
         Sector sector = tileMap.getSectorOf(creature.location);
-        tileMap.getTile(creature.location).cre = creature;
+        tileMap.setCreature(creature.location, creature);
         sendToClientsWithSectorLoaded(messageBuilder.addCreature(creature), sector);
         creatures.put(creature.id, creature);
         attachScriptsToCreature(creature);
@@ -344,8 +747,18 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         return image;
     }
 
+    // heard by the clients near loc
     public void announce(String from, String message, Coord loc) {
-        sendToAll(messageBuilder.chat(from, message, loc));
+        sendToClientsNear(messageBuilder.broadcastChat(from, message, loc), loc);
+    }
+
+    public void announceToAll(String from, String message, Coord loc) {
+        sendToAll(messageBuilder.broadcastChat(from, message, loc));
+    }
+
+    // placed at the origin, like the server's own messages to everyone
+    public void announceToAll(String from, String message) {
+        announceToAll(from, message, new Coord(0, 0, 0));
     }
 
     public void announce(String from, String message, Coord loc, Entity to) {
@@ -362,7 +775,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     public void announceNewPlayer(ConnectionToGridiaClientHandler client, Player player) {
         String chatMessage = String.format("%s has joined the game!", player.creature.getAttribute("name"));
-        sendToAllBut(messageBuilder.chat(chatMessage, player.creature.location), client);
+        sendTo(messageBuilder.broadcastChat(chatMessage, player.creature.location), c -> c != client);
     }
 
     public void moveItem(Coord from, Coord to) {
@@ -376,14 +789,34 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     public void changeItem(Coord loc, ItemInstance item) {
         tileMap.setItem(item, loc);
+        _journal.itemChanged(tileMap.getIndexFromCoord(loc), item);
         updateTile(loc);
     }
 
     public void changeFloor(Coord loc, int floor) {
         tileMap.setFloor(loc, floor);
+        _journal.floorChanged(tileMap.getIndexFromCoord(loc), floor);
         updateTile(loc);
     }
 
+    public void containerSlotChanged(Container container, int slotIndex) {
+        _journal.containerSlotChanged(container.id, slotIndex, container.get(slotIndex));
+    }
+
+    // player attributes are journaled in the same form as player files store them
+    public void attributeChanged(Entity entity, String name, Object value) {
+        if (creatures.get(entity.id) != entity || !entity.getBoolean("belongsToPlayer") || value instanceof Container || value instanceof Entity) {
+            return;
+        }
+        JsonObject typedValue = null;
+        if (value != null) {
+            typedValue = new JsonObject();
+            typedValue.addProperty("class", value.getClass().getName());
+            typedValue.add("value", GridiaGson.get().toJsonTree(value));
+        }
+        _journal.playerAttributeChanged((int) entity.getAttribute("playerId"), name, typedValue);
+    }
+
     public void reduceItemQuantity(Coord loc, int amount) {
         changeItem(loc, tileMap.getItem(loc).remove(amount));
     }
@@ -393,8 +826,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
     }
 
     public void updateTile(Coord loc) {
-        Tile tile = tileMap.getTile(loc);
-        sendToClientsWithAreaLoaded(messageBuilder.updateTile(loc, tile), loc);
+        sendToClientsWithAreaLoaded(messageBuilder.updateTile(loc, tileMap.getFloor(loc), tileMap.getItem(loc)), loc);
     }
 
     public void updateTile(int index) {
@@ -403,7 +835,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
 
     //adds item only if it is to an empty tile or if it would stack
     public ItemInstance addItem(ItemInstance itemToAdd, Coord loc) {
-        ItemInstance currentItem = tileMap.getTile(loc).item;
+        ItemInstance currentItem = tileMap.getItem(loc);
         boolean willStack = ItemInstance.stackable(currentItem, itemToAdd);
         if (currentItem.getItem().id != 0 && !willStack) {
             return null;
@@ -413,6 +845,18 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         return itemToSet;
     }
 
+    public List<Entity> findCreaturesInRange(Coord loc, int radius, Predicate<Entity> predicate) {
+        return tileMap.getCreatureIndex().findInRange(loc, radius, predicate);
+    }
+
+    public List<Entity> findNearestCreatures(Coord loc, int radius, int count, Predicate<Entity> predicate) {
+        return tileMap.getCreatureIndex().findNearest(loc, radius, count, predicate);
+    }
+
+    public List<Entity> findPlayersInRange(Coord loc, int radius) {
+        return tileMap.getCreatureIndex().findPlayersInRange(loc, radius);
+    }
+
     //attempts to find a nearby location fulfilling a predicate
     //goes target, left-above, above, right-above, left, right, left-below...
     public Coord findNearestTile(Coord loc, int range, boolean includeTargetLocation, Predicate<Coord> predicate) {
@@ -452,7 +896,7 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
     }
 
     public void updateContainerSlot(Container container, int slotIndex) {
-        Message message = messageBuilder.updateContainerSlot(container, slotIndex);
+        EncodedMessage message = messageBuilder.updateContainerSlot(container, slotIndex);
         Function<ConnectionToGridiaClientHandler, Integer> invId = client
                 -> ((Container) (client.player.creature.getAttribute("inventory"))).id;
         sendTo(message, client -> invId.apply(client) == container.id || client.player.equipment.id == container.id);
@@ -462,21 +906,154 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
         );
     }
 
-    public void save() throws IOException {
-        sendToAll(messageBuilder.chat("Saving world...", new Coord(0, 0, 0)));
-        tileMap.save();
-        for (ConnectionToGridiaClientHandler client : _clients) {
-            savePlayer(client.player);
+    /**
+     * Snapshots the dirty sectors, online players and containers, then writes
+     * them on the save thread. Returns false if a save is already running.
+     */
+    public boolean save() {
+        if (!_saveInProgress.compareAndSet(false, true)) {
+            return false;
         }
-        containerFactory.saveAll();
-        sendToAll(messageBuilder.chat("Saved!", new Coord(0, 0, 0)));
+        boolean submitted = false;
+        try {
+            if (_journal.hasFailed()) {
+                Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, "The journal failed, so changes since are only kept by this save");
+            }
+            long checkpoint = _journal.rotate(); // and starts over, if it had failed
+            List<Sector> sectors = tileMap.snapshotDirtySectors();
+            List<CompletableFuture<Boolean>> evictions = tileMap.getEvictedWrites();
+            Map<Integer, String> players = new HashMap<>();
+            _clients.stream()
+                    .filter(client -> client.player != null)
+                    .forEach(client -> players.put(client.player.getPlayerId(), playerFactory.toJson(client.player)));
+            List<Container> containers = containerFactory.snapshotAll();
+            sendToAll(messageBuilder.broadcastChat("Saving world...", new Coord(0, 0, 0)));
+
+            _saveExecutor.execute(() -> {
+                try {
+                    writeSave(checkpoint, sectors, evictions, players, containers);
+                } finally {
+                    _saveInProgress.set(false);
+                }
+            });
+            submitted = true;
+        } finally {
+            if (!submitted) {
+                _saveInProgress.set(false);
+            }
+        }
+        return true;
     }
 
-    public void savePlayer(Player player) throws IOException {
+    private void writeSave(long checkpoint, List<Sector> sectors, List<CompletableFuture<Boolean>> evictions,
+            Map<Integer, String> players, List<Container> containers) {
+        int total = sectors.size() + players.size() + containers.size();
+        int written = 0;
+        int failed = 0;
+        for (Sector sector : sectors) {
+            failed += writeQuietly(() -> tileMap.writeSnapshot(sector));
+            reportSaveProgress(++written, total);
+        }
+        for (Map.Entry<Integer, String> player : players.entrySet()) {
+            failed += writeQuietly(() -> playerFactory.write(player.getKey(), player.getValue()));
+            reportSaveProgress(++written, total);
+        }
+        for (Container container : containers) {
+            failed += writeQuietly(() -> containerFactory.save(container));
+            reportSaveProgress(++written, total);
+        }
+        // evicted sectors hold changes from before the checkpoint too
+        for (CompletableFuture<Boolean> eviction : evictions) {
+            failed += awaitQuietly(eviction) ? 0 : 1;
+        }
+        failed += writeQuietly(tileMap::flush);
+        if (failed == 0) {
+            writeQuietly(() -> _journal.deleteSegmentsBefore(checkpoint));
+        }
+        String result = failed == 0 ? "Saved!" : String.format("Saved, but %d of %d writes failed!", failed, total);
+        if (_journal.hasFailed()) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, "The journal is still failing, changes are only kept by saving");
+            result += " The journal could not be written!";
+        }
+        sendToAll(messageBuilder.broadcastChat(result, new Coord(0, 0, 0)));
+    }
+
+    /**
+     * Waits for the saves already started, then closes the map's store and
+     * the journal, writing out the last of both. For the way out of the
+     * process, once nothing else will change the world.
+     */
+    public void shutdown() {
+        awaitShutdown(_saveExecutor, "world saver");
+        awaitShutdown(_evictionWriter, "evicted sector writer");
+        try {
+            tileMap.close();
+        } catch (IOException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        try {
+            _journal.close();
+        } catch (IOException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private boolean awaitQuietly(CompletableFuture<Boolean> write) {
+        try {
+            return write.get(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, "Gave up waiting on an evicted sector", ex);
+            return false;
+        }
+    }
+
+    private static void awaitShutdown(ExecutorService executor, String name) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, "Gave up waiting on the {0}", name);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Write {
+
+        void run() throws IOException;
+    }
+
+    private int writeQuietly(Write write) {
+        try {
+            write.run();
+            return 0;
+        } catch (IOException ex) {
+            Logger.getLogger(ServingGridia.class.getName()).log(Level.SEVERE, null, ex);
+            return 1;
+        }
+    }
+
+    // every quarter
+    private void reportSaveProgress(int written, int total) {
+        if (written != total && written * 4 / total != (written - 1) * 4 / total) {
+            sendToAll(messageBuilder.broadcastChat(String.format("Saving world... %d%%", written * 100 / total), new Coord(0, 0, 0)));
+        }
+    }
+
+    public void savePlayer(Player player) {
         if (player != null) {
-            playerFactory.save(player);
-            containerFactory.save((Container) player.creature.getAttribute("inventory"));
-            containerFactory.save(player.equipment);
+            int playerId = player.getPlayerId();
+            String json = playerFactory.toJson(player);
+            Container inventory = containerFactory.snapshot((Container) player.creature.getAttribute("inventory"));
+            Container equipment = containerFactory.snapshot(player.equipment);
+            _saveExecutor.execute(() -> {
+                writeQuietly(() -> playerFactory.write(playerId, json));
+                writeQuietly(() -> containerFactory.save(inventory));
+                writeQuietly(() -> containerFactory.save(equipment));
+            });
         }
     }
 
@@ -530,9 +1107,13 @@ public class ServingGridia extends ServingFileTransferring<ConnectionToGridiaCli
                 .findFirst().orElse(null);
     }
 
+    // seen by the clients near loc
     public void playAnimation(String name, Coord loc) {
-        Message animMessage = messageBuilder.animation(name, loc);
-        sendToAll(animMessage);
+        sendToClientsNear(messageBuilder.animation(name, loc), loc);
+    }
+
+    public void playAnimationToAll(String name, Coord loc) {
+        sendToAll(messageBuilder.animation(name, loc));
     }
 
     public void forEachClient(Consumer<ConnectionToGridiaClientHandler> consumer) {
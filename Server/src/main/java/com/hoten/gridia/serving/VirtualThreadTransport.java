@@ -0,0 +1,86 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.VirtualThreads;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Blocking connections like the library's, but each client's read loop runs
+ * on a virtual thread, so idle clients cost next to nothing. On a JVM without
+ * virtual threads this is a thread per client, as before.
+ */
+public class VirtualThreadTransport {
+
+    private final ServingGridia _server;
+    private final int _port;
+    private final ClientFiles _clientFiles;
+    private final ExecutorService _threads = VirtualThreads.newPerTaskExecutor("Client");
+    private ServerSocket _acceptor;
+
+    public VirtualThreadTransport(ServingGridia server, int port, ClientFiles clientFiles) {
+        _server = server;
+        _port = port;
+        _clientFiles = clientFiles;
+    }
+
+    public void start() throws IOException {
+        _acceptor = new ServerSocket(_port);
+        new Thread(this::acceptLoop, "Client acceptor").start();
+    }
+
+    public void stop() throws IOException {
+        _acceptor.close();
+    }
+
+    private void acceptLoop() {
+        while (!_acceptor.isClosed()) {
+            try {
+                Socket socket = _acceptor.accept();
+                socket.setTcpNoDelay(true);
+                _threads.execute(() -> serve(socket));
+            } catch (SocketException ex) {
+                return;
+            } catch (IOException ex) {
+                Logger.getLogger(VirtualThreadTransport.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        ConnectionToGridiaClientHandler client;
+        try {
+            client = _server.makeNewConnection(socket);
+        } catch (IOException ex) {
+            Logger.getLogger(VirtualThreadTransport.class.getName()).log(Level.SEVERE, null, ex);
+            try {
+                socket.close();
+            } catch (IOException closeEx) {
+            }
+            return;
+        }
+        AtomicBoolean settled = new AtomicBoolean();
+        try {
+            _clientFiles.serve(client.getInputStream(), client.getOutputStream());
+            client.start(() -> {
+                settled.set(true);
+                _server.onTransportClientSettled(client);
+            }, client);
+        } catch (EOFException | SocketException ex) {
+            // the client went away
+        } catch (IOException | InstantiationException | IllegalAccessException ex) {
+            Logger.getLogger(VirtualThreadTransport.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            client.close();
+            if (settled.get()) {
+                _server.onTransportClientClose(client);
+            }
+        }
+    }
+}
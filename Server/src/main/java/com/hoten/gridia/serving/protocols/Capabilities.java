@@ -0,0 +1,22 @@
+package com.hoten.gridia.serving.protocols;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hoten.gridia.serving.ConnectionToGridiaClientHandler;
+import com.hoten.gridia.serving.GridiaMessageToClientBuilder;
+import com.hoten.servingjava.message.JsonMessageHandler;
+import java.io.IOException;
+
+// the client's answer to what Initialize offered
+public class Capabilities extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
+
+    @Override
+    protected void handle(ConnectionToGridiaClientHandler connection, JsonObject data) throws IOException {
+        connection.setBinaryMessages(isVersion(data.get("binaryMessages"), GridiaMessageToClientBuilder.BINARY_MESSAGES_VERSION));
+        connection.setCompactSectors(isVersion(data.get("compactSectors"), GridiaMessageToClientBuilder.COMPACT_SECTORS_VERSION));
+    }
+
+    private static boolean isVersion(JsonElement version, int expected) {
+        return version != null && version.getAsInt() == expected;
+    }
+}
@@ -102,6 +102,10 @@ public class Chat extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
         } else if (message.equals("!online")) {
             Message msg = server.messageBuilder.chat(server.whoIsOnline(), player.creature.location);
             connection.send(msg);
+        } else if (message.equals("!queues") && player.isAdmin()) {
+            connection.send(server.messageBuilder.chat(server.outboundQueueReport(), player.creature.location));
+        } else if (message.equals("!latency") && player.isAdmin()) {
+            connection.send(server.messageBuilder.chat(server.scriptLatencyReport(), player.creature.location));
         } else if (message.equals("!die")) {
             player.creature.callMethod("hurt", Arrays.asList(10000, "gave up"));
         } else if (message.startsWith("!warp ")) {
@@ -128,7 +132,9 @@ public class Chat extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
                 connection.send(server.messageBuilder.chat("Invalid player.", player.creature.location));
             }
         } else if (message.equals("!save") && player.isAdmin()) {
-            server.save();
+            if (!server.save()) {
+                connection.send(server.messageBuilder.chat("A save is already in progress.", player.creature.location));
+            }
         } else if (message.startsWith("!item ") && player.isAdmin()) {
             String[] split = message.replaceFirst("!item ", "").split(",", 2);
             String itemInput = split[0];
@@ -162,7 +168,7 @@ public class Chat extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
             if (otherPlayer != null) {
                 otherPlayer.setIsAdmin(true);
                 server.savePlayer(otherPlayer);
-                server.sendToAll(server.messageBuilder.chat(otherPlayer.creature.getAttribute("name") + " is now an admin.", otherPlayer.creature.location));
+                server.sendToAll(server.messageBuilder.broadcastChat(otherPlayer.creature.getAttribute("name") + " is now an admin.", otherPlayer.creature.location));
             } else {
                 connection.send(server.messageBuilder.chat("Invalid player.", player.creature.location));
             }
@@ -196,7 +202,7 @@ public class Chat extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
         } else if (message.startsWith("!")) {
             connection.send(server.messageBuilder.chat("Invalid command.", player.creature.location));
         } else {
-            server.sendToAll(server.messageBuilder.chat((String) player.creature.getAttribute("name"), message, player.creature.location));
+            server.announce((String) player.creature.getAttribute("name"), message, player.creature.location);
         }
         if (message.startsWith("!")) {
             connection.send(server.messageBuilder.chat("Command: " + message, player.creature.location));
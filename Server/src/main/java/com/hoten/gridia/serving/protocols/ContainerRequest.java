@@ -18,7 +18,7 @@ public class ContainerRequest extends JsonMessageHandler<ConnectionToGridiaClien
     protected void handle(ConnectionToGridiaClientHandler connection, JsonObject data) throws IOException {
         ServingGridia server = connection.getServer();
         Coord location = GridiaGson.get().fromJson(data.get("loc"), Coord.class);
-        ItemInstance containerItem = server.tileMap.getTile(location).item;
+        ItemInstance containerItem = server.tileMap.getItem(location);
         requestContainer(server, connection, containerItem);
     }
 
@@ -33,7 +33,7 @@ public class ContainerRequest extends JsonMessageHandler<ConnectionToGridiaClien
                 } else {
                     container = server.containerFactory.create(Container.ContainerType.Other, 20);
                     itemData.addProperty("containerId", container.id);
-                    server.sendToAll(server.messageBuilder.chat(player.getUsername(), "Ah! That brand new container smell.", player.creature.location));
+                    server.announce(player.getUsername(), "Ah! That brand new container smell.", player.creature.location);
                 }
             }
 
@@ -15,7 +15,7 @@ public class CreatureRequest extends JsonMessageHandler<ConnectionToGridiaClient
         int id = data.get("id").getAsInt();
         
         Entity cre = server.getCreature(id);
-        if (cre != null) {
+        if (cre != null && server.canSee(connection, cre)) {
             connection.send(server.messageBuilder.addCreature(cre));
         }
     }
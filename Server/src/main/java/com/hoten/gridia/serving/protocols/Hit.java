@@ -3,7 +3,6 @@ package com.hoten.gridia.serving.protocols;
 import com.google.gson.JsonObject;
 import com.hoten.gridia.Player;
 import com.hoten.gridia.map.Coord;
-import com.hoten.gridia.map.Tile;
 import com.hoten.gridia.serializers.GridiaGson;
 import com.hoten.gridia.serving.ConnectionToGridiaClientHandler;
 import com.hoten.gridia.serving.ServingGridia;
@@ -17,7 +16,6 @@ public class Hit extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
         ServingGridia server = connection.getServer();
         Player player = connection.getPlayer();
         Coord loc = GridiaGson.get().fromJson(data.get("loc"), Coord.class);
-        Tile tile = server.tileMap.getTile(loc);
-        server.dispatchEvent("MovedInto", tile.cre, "entity", player.creature, "location", loc);
+        server.dispatchEvent("MovedInto", server.tileMap.getCreature(loc), "entity", player.creature, "location", loc);
     }
 }
@@ -33,8 +33,6 @@ public class MoveItem extends JsonMessageHandler<ConnectionToGridiaClientHandler
         if (quantityToMove == -1) { // :(
             quantityToMove = sourceItem.getQuantity();
         }
-        ItemInstance itemToMove = new ItemInstance(sourceItem.getItem(), quantityToMove, sourceItem.getData());
-        itemToMove.age = sourceItem.age;
         ItemWrapper destItemWrapped = server.getItemFrom(player, dest, destIndex);
 
         // check for rights to item
@@ -47,6 +45,9 @@ public class MoveItem extends JsonMessageHandler<ConnectionToGridiaClientHandler
             return;
         }
 
+        sourceItemWrapped.ageItem();
+        ItemInstance itemToMove = new ItemInstance(sourceItem.getItem(), quantityToMove, sourceItem.getData());
+        itemToMove.age = sourceItem.age;
         boolean moveSuccessful = destItemWrapped.addItemHere(itemToMove);
         if (!moveSuccessful) {
             return;
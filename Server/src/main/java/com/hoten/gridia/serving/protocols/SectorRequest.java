@@ -15,9 +15,15 @@ public class SectorRequest extends JsonMessageHandler<ConnectionToGridiaClientHa
         int sx = data.get("x").getAsInt();
         int sy = data.get("y").getAsInt();
         int sz = data.get("z").getAsInt();
+        String hash = data.has("hash") ? data.get("hash").getAsString() : null; // of the client's copy
         
+        if (!server.isInView(connection, sx, sy, server.tileMap.sectorSize)) {
+            connection.send(server.messageBuilder.sectorUnload(sx, sy, sz));
+            return;
+        }
+
         Sector sector = server.tileMap.getSector(sx, sy, sz);
         connection.addToLoadedSectors(sector);
-        connection.send(server.messageBuilder.sectorRequest(sector));
+        connection.send(server.sectorDataCache.get(sector, hash, connection.getCompactSectors()));
     }
 }
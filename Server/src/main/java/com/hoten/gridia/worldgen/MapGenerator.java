@@ -6,11 +6,10 @@ import com.hoten.delaunay.examples.TestGraphImpl.ColorData;
 import com.hoten.delaunay.voronoi.VoronoiGraph;
 import com.hoten.gridia.content.ContentManager;
 import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.map.BinarySectorSaver;
 import com.hoten.gridia.map.Coord;
 import com.hoten.gridia.map.Sector;
 import com.hoten.gridia.map.SectorLoader;
-import com.hoten.gridia.map.SectorSaver;
-import com.hoten.gridia.map.Tile;
 import com.hoten.gridia.map.TileMap;
 import java.awt.image.BufferedImage;
 import java.io.File;
@@ -43,6 +42,7 @@ public class MapGenerator {
         mapMetaData.put("depth", depth);
         mapMetaData.put("sectorSize", sectorSize);
         mapMetaData.put("defaultPlayerSpawn", new Coord(size / 2, size / 2, 0));
+        mapMetaData.put("format", TileMap.FORMAT_BINARY);
 
         String metaDataJson = new Gson().toJson(mapMetaData);
         FileUtils.writeStringToFile(new File(map, "meta.json"), metaDataJson);
@@ -50,7 +50,7 @@ public class MapGenerator {
         VoronoiGraph graph = TestDriver.createVoronoiGraph(size, _numPoints, _numLloydRelaxations, _seed);
         BufferedImage mapImage = graph.createMap();
 
-        TileMap world = new TileMap(size, depth, sectorSize, createFakeLoader(), new SectorSaver(map));
+        TileMap world = new TileMap(size, depth, sectorSize, createFakeLoader(), new BinarySectorSaver(map));
 
         HashMap<Integer, ColorData> colorBiomeMap = new HashMap<>();
 
@@ -72,14 +72,8 @@ public class MapGenerator {
 
         for (int x = 0; x < size; x++) {
             for (int y = 0; y < size; y++) {
-                for (int z = 1; z < depth; z++) {
-                    Tile undergroundTile = world.getTile(x, y, z);
-                    undergroundTile.item = ItemInstance.NONE;
-                    undergroundTile.floor = 0;
-                }
-
                 int pixel = mapImage.getRGB(x, y);
-                Tile tile = world.getTile(x, y, 0);
+                int floor = 0;
 
                 Supplier<ItemInstance> itemSupplier = defaultItemSupplier;
                 double itemProbability = 0;
@@ -89,11 +83,11 @@ public class MapGenerator {
                     double e = graph.centers.get(index).elevation;
                     int grassIndex = (int) (e * 10);
                     itemProbability = 0.015 * grassIndex;
-                    tile.floor = 100 + grassIndex * 20;
+                    floor = 100 + grassIndex * 20;
                 }
 
                 if (x == 0 || y == 0 || x == size - 1 || y == size - 1) {
-                    tile.floor = 1;
+                    floor = 1;
                 } else {
                     ColorData biome = colorBiomeMap.get(pixel);
 
@@ -102,17 +96,17 @@ public class MapGenerator {
                             case OCEAN:
                             case RIVER:
                             case LAKE:
-                                tile.floor = 1;
+                                floor = 1;
                                 itemProbability = 0;
                                 break;
                             case BEACH:
-                                tile.floor = 41;
+                                floor = 41;
                                 itemProbability = 0;
                                 break;
                             case SUBTROPICAL_DESERT:
                             case TEMPERATE_DESERT:
                             case BARE:
-                                tile.floor = 44;
+                                floor = 44;
                                 itemSupplier = desertItemSupplier;
                                 itemProbability = 0.01;
                                 break;
@@ -121,38 +115,36 @@ public class MapGenerator {
                             case SNOW:
                                 if (index < graph.centers.size()) {
                                     double m = graph.centers.get(index).moisture;
-                                    tile.floor = 200 + (int) (m * 3) * 20;
+                                    floor = 200 + (int) (m * 3) * 20;
                                 }
                                 break;
                             default:
-                                //tile.floor = 0;
+                                //floor = 0;
                                 //System.out.println("biome = " + biome);
                                 break;
                         }
                     } else {
-                        tile.floor = 4;
+                        floor = 4;
                     }
                 }
 
-                tile.item = random.nextDouble() < itemProbability ? itemSupplier.get() : ItemInstance.NONE;
+                world.setFloor(x, y, 0, floor);
+                world.setItem(random.nextDouble() < itemProbability ? itemSupplier.get() : ItemInstance.NONE, x, y, 0);
             }
         }
 
+        world.loadAll(); // the untouched underground sectors still need to be saved
         new File(map, "scripts/auto").mkdirs();
 
         return world;
     }
 
+    // everything below the surface starts out empty, and every sector needs saving
     private SectorLoader createFakeLoader() {
         return (int sectorSize, int sx, int sy, int sz) -> {
-            Tile[][] tiles = new Tile[sectorSize][sectorSize];
-            for (int x = 0; x < sectorSize; x++) {
-                tiles[x] = new Tile[sectorSize];
-                for (int y = 0; y < sectorSize; y++) {
-                    tiles[x][y] = new Tile();
-                }
-            }
-            return new Sector(tiles, sx, sy, sz);
+            Sector sector = sz == 0 ? new Sector(sectorSize, sx, sy, sz) : Sector.uniform(sectorSize, 0, sx, sy, sz);
+            sector.markDirty();
+            return sector;
         };
     }
 }
@@ -6,10 +6,25 @@ import com.hoten.gridia.content.ContentLoader;
 import java.io.IOException;
 import org.apache.commons.io.IOUtils;
 
-class TestContentLoader implements ContentLoader {
+/**
+ * Loads the test content once per test run. ItemInstance.NONE is bound to the
+ * first ContentManager created, so every test has to share the same one.
+ */
+public class TestContentLoader implements ContentLoader {
+
+    private static ContentManager _contentManager;
 
     @Override
     public ContentManager load() throws IOException {
+        synchronized (TestContentLoader.class) {
+            if (_contentManager == null) {
+                _contentManager = loadFromResources();
+            }
+            return _contentManager;
+        }
+    }
+
+    private ContentManager loadFromResources() throws IOException {
         String itemsJson = IOUtils.toString(getClass().getResourceAsStream("/test_items.json"), "UTF-8");
         String usagesJson = IOUtils.toString(getClass().getResourceAsStream("/test_usages.json"), "UTF-8");
         String monstersJson = IOUtils.toString(getClass().getResourceAsStream("/test_monsters.json"), "UTF-8");
@@ -0,0 +1,189 @@
+package com.hoten.gridia.journal;
+
+import com.google.gson.JsonObject;
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.content.TestContentLoader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class JournalTest {
+
+    private static ContentManager _contentManager;
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        _contentManager = new TestContentLoader().load();
+    }
+
+    private static class RecordingReplayer implements Journal.Replayer {
+
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void itemChanged(int tileIndex, ItemInstance item) {
+            records.add("item " + tileIndex + " " + item + " " + item.age);
+        }
+
+        @Override
+        public void floorChanged(int tileIndex, int floor) {
+            records.add("floor " + tileIndex + " " + floor);
+        }
+
+        @Override
+        public void containerSlotChanged(int containerId, int slot, ItemInstance item) {
+            records.add("container " + containerId + " " + slot + " " + item);
+        }
+
+        @Override
+        public void playerAttributeChanged(int playerId, String name, JsonObject value) {
+            records.add("player " + playerId + " " + name + " " + value);
+        }
+    }
+
+    private Journal open() throws IOException {
+        return new Journal(_folder.getRoot(), "test-map", _contentManager);
+    }
+
+    private List<String> replay() throws IOException {
+        RecordingReplayer replayer = new RecordingReplayer();
+        try (Journal journal = open()) {
+            journal.replay(replayer);
+        }
+        return replayer.records;
+    }
+
+    @Test
+    public void testReplaysRecordsInOrder() throws Exception {
+        try (Journal journal = open()) {
+            ItemInstance tree = _contentManager.createItemInstanceByName("Tree");
+            tree.age = 3;
+            journal.itemChanged(42, tree);
+            journal.floorChanged(42, 7);
+            journal.containerSlotChanged(5, 2, _contentManager.createItemInstanceByName("Logs", 10));
+            JsonObject value = new JsonObject();
+            value.addProperty("value", 9);
+            journal.playerAttributeChanged(1, "life", value);
+            journal.playerAttributeChanged(1, "target", null);
+            journal.sync();
+        }
+        List<String> records = replay();
+        assertEquals(5, records.size());
+        assertEquals("item 42 Tree 3", records.get(0));
+        assertEquals("floor 42 7", records.get(1));
+        assertEquals("container 5 2 Logs (10)", records.get(2));
+        assertEquals("player 1 life {\"value\":9}", records.get(3));
+        assertEquals("player 1 target null", records.get(4));
+    }
+
+    @Test
+    public void testTornRecordEndsReplay() throws Exception {
+        try (Journal journal = open()) {
+            journal.floorChanged(1, 1);
+            journal.floorChanged(2, 2);
+        }
+        File segment = _folder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        List<String> records = replay();
+        assertEquals(1, records.size());
+        assertEquals("floor 1 1", records.get(0));
+    }
+
+    @Test
+    public void testCheckpointDropsOlderSegments() throws Exception {
+        try (Journal journal = open()) {
+            journal.floorChanged(1, 1);
+            long checkpoint = journal.rotate();
+            journal.floorChanged(2, 2);
+            journal.sync();
+            journal.deleteSegmentsBefore(checkpoint);
+        }
+        List<String> records = replay();
+        assertEquals(1, records.size());
+        assertEquals("floor 2 2", records.get(0));
+    }
+
+    @Test
+    public void testReplayedSegmentsCanBeDeleted() throws Exception {
+        try (Journal journal = open()) {
+            journal.floorChanged(1, 1);
+        }
+        try (Journal journal = open()) {
+            assertEquals(1, journal.replay(new RecordingReplayer()));
+            journal.deleteReplayedSegments();
+        }
+        assertTrue(replay().isEmpty());
+    }
+
+    @Test
+    public void testFailedWriteIsNotDurable() throws Exception {
+        File dir = new File(_folder.getRoot(), "failing");
+        try (Journal journal = new Journal(dir, "test-map", _contentManager)) {
+            journal.floorChanged(1, 1);
+            journal.sync();
+            for (File file : dir.listFiles()) {
+                assertTrue(file.delete());
+            }
+            assertTrue(dir.delete());
+            assertTrue(dir.createNewFile()); // so the next segment can't be created
+            journal.rotate();
+            journal.floorChanged(2, 2);
+            try {
+                journal.sync();
+                fail();
+            } catch (IOException ex) {
+            }
+            assertTrue(journal.hasFailed());
+            journal.floorChanged(3, 3);
+            try {
+                journal.sync();
+                fail();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    @Test
+    public void testRotationRecoversFromFailure() throws Exception {
+        File dir = new File(_folder.getRoot(), "recovering");
+        try (Journal journal = new Journal(dir, "test-map", _contentManager)) {
+            for (File file : dir.listFiles()) {
+                assertTrue(file.delete());
+            }
+            assertTrue(dir.delete());
+            assertTrue(dir.createNewFile());
+            journal.rotate();
+            journal.floorChanged(1, 1);
+            try {
+                journal.sync();
+                fail();
+            } catch (IOException ex) {
+            }
+            assertTrue(dir.delete());
+            assertTrue(dir.mkdir());
+            journal.rotate();
+            journal.floorChanged(2, 2);
+            journal.sync();
+            assertFalse(journal.hasFailed());
+        }
+        RecordingReplayer replayer = new RecordingReplayer();
+        try (Journal journal = new Journal(dir, "test-map", _contentManager)) {
+            journal.replay(replayer);
+        }
+        assertEquals(Arrays.asList("floor 2 2"), replayer.records);
+    }
+}
@@ -0,0 +1,109 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.content.TestContentLoader;
+import java.io.File;
+import java.io.IOException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class BinarySectorFormatTest {
+
+    private static final int SECTOR_SIZE = 4;
+    private static ContentManager _contentManager;
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        _contentManager = new TestContentLoader().load();
+    }
+
+    private Sector createSector() {
+        Sector sector = new Sector(SECTOR_SIZE, 1, 2, 0);
+        for (int x = 0; x < SECTOR_SIZE; x++) {
+            for (int y = 0; y < SECTOR_SIZE; y++) {
+                sector.setFloor(x, y, x + y);
+            }
+        }
+        return sector;
+    }
+
+    private Sector saveAndLoad(Sector sector) throws IOException {
+        File map = _folder.getRoot();
+        new BinarySectorSaver(map).save(sector);
+        return new BinarySectorLoader(map, _contentManager).load(SECTOR_SIZE, sector.sx, sector.sy, sector.sz);
+    }
+
+    @Test
+    public void testRoundTripFloorsAndItems() throws IOException {
+        Sector sector = createSector();
+        sector.setItem(1, 3, _contentManager.createItemInstanceByName("Logs", 250));
+        Sector loaded = saveAndLoad(sector);
+        for (int x = 0; x < SECTOR_SIZE; x++) {
+            for (int y = 0; y < SECTOR_SIZE; y++) {
+                assertEquals(x + y, loaded.getFloor(x, y));
+            }
+        }
+        assertEquals(_contentManager.createItemInstanceByName("Logs", 250), loaded.getItem(1, 3));
+        assertSame(ItemInstance.NONE, loaded.getItem(0, 0));
+    }
+
+    @Test
+    public void testRoundTripOwners() throws IOException {
+        Sector sector = createSector();
+        sector.setOwner(7);
+        sector.setTileOwner(2, 2, Tile.OWNER_SERVER);
+        Sector loaded = saveAndLoad(sector);
+        assertEquals(7, loaded.getOwner());
+        assertEquals(Tile.OWNER_SERVER, loaded.getTileOwner(2, 2));
+        assertTrue(loaded.isTileUnclaimed(0, 0));
+    }
+
+    @Test
+    public void testRoundTripItemAgeAndData() throws IOException {
+        Sector sector = createSector();
+        ItemInstance tree = _contentManager.createItemInstanceByName("Tree");
+        tree.age = 5;
+        tree.getData().addProperty("planter", "bill");
+        sector.setItem(3, 0, tree);
+        Sector loaded = saveAndLoad(sector);
+        ItemInstance loadedTree = loaded.getItem(3, 0);
+        assertEquals(5, loadedTree.age);
+        assertEquals("bill", loadedTree.getData().get("planter").getAsString());
+    }
+
+    @Test
+    public void testUniformSectorIsStoredAsMarker() throws IOException {
+        Sector loaded = saveAndLoad(Sector.uniform(SECTOR_SIZE, 9, 0, 0, 1));
+        assertEquals(9, loaded.getUniformFloor());
+        assertEquals(9, loaded.getFloor(3, 3));
+        assertTrue(new File(_folder.getRoot(), BinarySectorSaver.fileName(0, 0, 1)).length() < 16);
+    }
+
+    @Test
+    public void testUniformSectorsCopyOnWrite() {
+        Sector first = Sector.uniform(SECTOR_SIZE, 9, 0, 0, 1);
+        Sector second = Sector.uniform(SECTOR_SIZE, 9, 1, 0, 1);
+        Sector snapshot = first.snapshot();
+        first.setFloor(1, 1, 2);
+        first.setItem(2, 2, _contentManager.createItemInstanceByName("Logs"));
+        assertEquals(2, first.getFloor(1, 1));
+        assertEquals(-1, first.getUniformFloor());
+        assertEquals(9, second.getFloor(1, 1));
+        assertEquals(9, snapshot.getFloor(1, 1));
+        assertSame(ItemInstance.NONE, second.getItem(2, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsMismatchedSectorSize() throws IOException {
+        File map = _folder.getRoot();
+        new BinarySectorSaver(map).save(createSector());
+        new BinarySectorLoader(map, _contentManager).load(SECTOR_SIZE * 2, 1, 2, 0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.scripting.Entity;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CreatureIndexTest {
+
+    private TileMap _tileMap;
+    private CreatureIndex _index;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        new TestContentLoader().load(); // sectors start out filled with ItemInstance.NONE
+    }
+
+    @Before
+    public void setUp() {
+        SectorLoader sectorLoader = (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z);
+        _tileMap = new TileMap(100, 2, 20, sectorLoader, new SectorSaver(null));
+        _index = _tileMap.getCreatureIndex();
+    }
+
+    private Entity place(int x, int y, int z) {
+        Entity cre = new Entity();
+        cre.location = new Coord(x, y, z);
+        _tileMap.setCreature(cre.location, cre);
+        return cre;
+    }
+
+    @Test
+    public void testFindInRangeLooksAcrossSectorsAndEdges() {
+        Entity near = place(21, 21, 0);
+        Entity acrossEdge = place(98, 18, 0);
+        place(30, 30, 0);
+        place(18, 18, 1);
+        List<Entity> found = _index.findInRange(new Coord(18, 18, 0), 4, cre -> true);
+        assertEquals(1, found.size());
+        assertSame(near, found.get(0));
+        assertTrue(_index.findInRange(new Coord(1, 18, 0), 4, cre -> true).contains(acrossEdge));
+    }
+
+    @Test
+    public void testFindNearestIsOrderedByDistance() {
+        Entity far = place(10, 15, 0);
+        Entity nearest = place(10, 11, 0);
+        place(10, 12, 1);
+        List<Entity> found = _index.findNearest(new Coord(10, 10, 0), 5, 2, cre -> true);
+        assertEquals(2, found.size());
+        assertSame(nearest, found.get(0));
+        assertSame(far, found.get(1));
+        assertEquals(1, _index.findNearest(new Coord(10, 10, 0), 5, 1, cre -> true).size());
+    }
+
+    @Test
+    public void testMovedAndRemovedCreaturesAreTracked() {
+        Entity cre = place(5, 5, 0);
+        _tileMap.setCreature(cre.location, null);
+        cre.location = new Coord(50, 50, 0);
+        _tileMap.setCreature(cre.location, cre);
+        assertTrue(_index.findInRange(new Coord(5, 5, 0), 3, c -> true).isEmpty());
+        assertSame(cre, _index.findInArea(new Coord(45, 45, 0), 10, 10, 1, c -> true).get(0));
+        _tileMap.setCreature(cre.location, null);
+        assertTrue(_index.findInArea(new Coord(0, 0, 0), 100, 100, 2, c -> true).isEmpty());
+    }
+
+    @Test
+    public void testCreatureLandedOnStaysTracked() {
+        Entity occupant = place(5, 5, 0);
+        Entity visitor = place(8, 8, 0);
+        // the visitor teleports onto the occupant's tile, then walks off
+        _tileMap.removeCreature(visitor.location, visitor);
+        visitor.location = occupant.location;
+        _tileMap.setCreature(visitor.location, visitor);
+        assertEquals(2, _index.findInRange(occupant.location, 0, c -> true).size());
+        _tileMap.removeCreature(visitor.location, visitor);
+        visitor.location = new Coord(6, 5, 0);
+        _tileMap.setCreature(visitor.location, visitor);
+        List<Entity> found = _index.findInRange(occupant.location, 0, c -> true);
+        assertEquals(1, found.size());
+        assertSame(occupant, found.get(0));
+        _tileMap.removeCreature(occupant.location, occupant);
+        assertTrue(_index.findInRange(occupant.location, 0, c -> true).isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.scripting.Entity;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Load test for CreatureIndex.findNearest, not run with the unit tests. Puts
+ * creatures at random on a map, a few of them players, and has every monster
+ * look for the nearest player within a radius: first by reading the tiles in
+ * rings around it, as the scripts did before, then through the index. Prints
+ * microseconds per query, median and best of the rounds.
+ *
+ * args: map size (default 300), creatures (500), players among them (20),
+ * radius (5), rounds (200)
+ */
+public class CreatureQueryLoad {
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int creatures = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int radius = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+
+        new TestContentLoader().load();
+        TileMap tileMap = new TileMap(size, 1, 20, (sectorSize, sx, sy, sz) -> new Sector(sectorSize, sx, sy, sz), new SectorSaver(null));
+        Random random = new Random(1);
+        List<Entity> monsters = new ArrayList<>();
+        for (int i = 0; i < creatures; i++) {
+            Entity cre = new Entity();
+            cre.location = new Coord(random.nextInt(size), random.nextInt(size), 0);
+            cre.setAttribute("belongsToPlayer", i < players);
+            if (tileMap.getCreature(cre.location) == null) {
+                tileMap.setCreature(cre.location, cre);
+                if (i >= players) {
+                    monsters.add(cre);
+                }
+            }
+        }
+
+        long[] scanTimes = new long[rounds];
+        long[] indexTimes = new long[rounds];
+        int found = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (Entity monster : monsters) {
+                if (scanForPlayer(tileMap, monster.location, radius) != null) {
+                    found++;
+                }
+            }
+            scanTimes[round] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Entity monster : monsters) {
+                if (!tileMap.getCreatureIndex().findNearest(monster.location, radius, 1, cre -> cre.getBoolean("belongsToPlayer")).isEmpty()) {
+                    found--;
+                }
+            }
+            indexTimes[round] = System.nanoTime() - start;
+        }
+        if (found != 0) {
+            throw new IllegalStateException("The scan and the index disagree");
+        }
+        Arrays.sort(scanTimes);
+        Arrays.sort(indexTimes);
+        System.out.println(String.format("%dx%d map, %d monsters looking for %d players within %d tiles, %d rounds", size, size, monsters.size(), players, radius, rounds));
+        System.out.println(String.format("ring scan median %.2f us/query, best %.2f", scanTimes[rounds / 2] / 1e3 / monsters.size(), scanTimes[0] / 1e3 / monsters.size()));
+        System.out.println(String.format("index     median %.2f us/query, best %.2f", indexTimes[rounds / 2] / 1e3 / monsters.size(), indexTimes[0] / 1e3 / monsters.size()));
+    }
+
+    private static Entity scanForPlayer(TileMap tileMap, Coord loc, int radius) {
+        for (int offset = 1; offset <= radius; offset++) {
+            for (int dx = -offset; dx <= offset; dx++) {
+                for (int dy = -offset; dy <= offset; dy++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dy)) != offset) {
+                        continue;
+                    }
+                    Entity cre = tileMap.getCreature(loc.add(dx, dy, 0));
+                    if (cre != null && cre.getBoolean("belongsToPlayer")) {
+                        return cre;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.content.TestContentLoader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GrowthQueueTest {
+
+    private static ContentManager _contentManager;
+    private TileMap _tileMap;
+    private List<Sector> _saved;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        _contentManager = new TestContentLoader().load();
+    }
+
+    @Before
+    public void setUp() {
+        _saved = new ArrayList<>();
+        SectorLoader sectorLoader = (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z);
+        SectorSaver sectorSaver = new SectorSaver(null) {
+            @Override
+            public void save(Sector sector) {
+                _saved.add(sector);
+            }
+        };
+        _tileMap = new TileMap(100, 1, 20, sectorLoader, sectorSaver);
+    }
+
+    private List<Coord> grow() {
+        List<Coord> grown = new ArrayList<>();
+        _tileMap.grow((loc, item) -> grown.add(loc));
+        return grown;
+    }
+
+    @Test
+    public void testItemGrowsWhenDue() {
+        _tileMap.setItem(_contentManager.createItemInstanceByName("Apple Sapling"), 5, 6, 0);
+        _tileMap.setItem(_contentManager.createItemInstanceByName("Tree"), 7, 7, 0);
+        assertEquals(1, _tileMap.getGrowingItemCount());
+        assertTrue(grow().isEmpty());
+        assertTrue(grow().isEmpty());
+        List<Coord> grown = grow();
+        assertEquals(1, grown.size());
+        assertEquals(5, grown.get(0).x);
+        assertEquals(6, grown.get(0).y);
+        assertEquals(0, _tileMap.getGrowingItemCount());
+    }
+
+    @Test
+    public void testAgeIsUpToDateOnceAged() throws IOException {
+        _tileMap.setItem(_contentManager.createItemInstanceByName("Apple Sapling"), 5, 6, 0);
+        _tileMap.save();
+        grow();
+        grow();
+        assertEquals(0, _tileMap.getItem(5, 6, 0).age);
+        assertEquals(0, _tileMap.getDirtySectorCount());
+        _tileMap.ageItem(new Coord(5, 6, 0));
+        assertEquals(2, _tileMap.getItem(5, 6, 0).age);
+        assertEquals(1, _tileMap.getDirtySectorCount());
+    }
+
+    @Test
+    public void testSharedInstanceGrowsOnEachTile() {
+        ItemInstance sapling = _contentManager.createItemInstanceByName("Apple Sapling");
+        _tileMap.setItem(sapling, 5, 6, 0);
+        _tileMap.setItem(sapling, 8, 9, 0);
+        assertEquals(2, _tileMap.getGrowingItemCount());
+        _tileMap.setItem(ItemInstance.NONE, 5, 6, 0);
+        grow();
+        grow();
+        List<Coord> grown = grow();
+        assertEquals(1, grown.size());
+        assertEquals(new Coord(8, 9, 0), grown.get(0));
+    }
+
+    @Test
+    public void testReplacedItemDoesNotGrow() {
+        _tileMap.setItem(_contentManager.createItemInstanceByName("Apple Sapling"), 5, 6, 0);
+        grow();
+        _tileMap.setItem(ItemInstance.NONE, 5, 6, 0);
+        grow();
+        assertTrue(grow().isEmpty());
+        assertEquals(0, _tileMap.getGrowingItemCount());
+    }
+
+    @Test
+    public void testAgeIsSaved() throws IOException {
+        ItemInstance tree = _contentManager.createItemInstanceByName("Apple Sapling");
+        _tileMap.setItem(tree, 5, 6, 0);
+        _tileMap.save();
+        grow();
+        _saved.clear();
+        _tileMap.save();
+        assertEquals(1, _saved.size());
+        assertEquals(1, _saved.get(0).getItem(5, 6).age);
+    }
+}
@@ -0,0 +1,135 @@
+package com.hoten.gridia.map;
+
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.content.TestContentLoader;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class RegionSectorStoreTest {
+
+    private static final int SECTOR_SIZE = 4;
+    private static final int SECTORS_ACROSS = 3;
+    private static final int DEPTH = 2;
+    private static ContentManager _contentManager;
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+    private RegionSectorStore _store;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        _contentManager = new TestContentLoader().load();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        _store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _store.close();
+    }
+
+    private RegionSectorStore open() throws IOException {
+        return new RegionSectorStore(_folder.getRoot(), SECTORS_ACROSS, DEPTH, SECTOR_SIZE, _contentManager);
+    }
+
+    private Sector createSector(int sx, int sy, int sz, int floor) {
+        Sector sector = new Sector(SECTOR_SIZE, sx, sy, sz);
+        for (int x = 0; x < SECTOR_SIZE; x++) {
+            for (int y = 0; y < SECTOR_SIZE; y++) {
+                sector.setFloor(x, y, floor);
+            }
+        }
+        return sector;
+    }
+
+    @Test
+    public void testSectorsAreStoredIndependently() throws IOException {
+        _store.save(createSector(0, 0, 0, 5));
+        _store.save(createSector(2, 1, 1, 9));
+        assertEquals(5, _store.load(SECTOR_SIZE, 0, 0, 0).getFloor(3, 3));
+        assertEquals(9, _store.load(SECTOR_SIZE, 2, 1, 1).getFloor(0, 0));
+    }
+
+    @Test
+    public void testRewriteInPlace() throws IOException {
+        _store.save(createSector(1, 1, 0, 5));
+        long sizeBefore = new File(_folder.getRoot(), RegionSectorStore.FILE_NAME).length();
+        _store.save(createSector(1, 1, 0, 6));
+        assertEquals(sizeBefore, new File(_folder.getRoot(), RegionSectorStore.FILE_NAME).length());
+        assertEquals(6, _store.load(SECTOR_SIZE, 1, 1, 0).getFloor(0, 0));
+    }
+
+    private Sector createGrownSector(int sx, int sy, int sz) {
+        Sector grown = createSector(sx, sy, sz, 5);
+        for (int x = 0; x < SECTOR_SIZE; x++) {
+            for (int y = 0; y < SECTOR_SIZE; y++) {
+                ItemInstance tree = _contentManager.createItemInstanceByName("Tree");
+                tree.getData().addProperty("note", "a fairly long note that makes this sector outgrow its slot");
+                grown.setItem(x, y, tree);
+            }
+        }
+        return grown;
+    }
+
+    private long fileLength() {
+        return new File(_folder.getRoot(), RegionSectorStore.FILE_NAME).length();
+    }
+
+    @Test
+    public void testGrownSectorIsRelocated() throws IOException {
+        _store.save(createSector(1, 0, 0, 5));
+        _store.save(createSector(2, 0, 0, 7));
+        _store.save(createGrownSector(1, 0, 0));
+        assertEquals("Tree", _store.load(SECTOR_SIZE, 1, 0, 0).getItem(2, 2).getItem().name);
+        assertEquals(7, _store.load(SECTOR_SIZE, 2, 0, 0).getFloor(2, 2));
+    }
+
+    @Test
+    public void testPersistsAcrossReopen() throws IOException {
+        _store.save(createSector(0, 2, 1, 11));
+        _store.close();
+        _store = open();
+        assertEquals(11, _store.load(SECTOR_SIZE, 0, 2, 1).getFloor(1, 1));
+    }
+
+    @Test
+    public void testVacatedSlotIsReusedAfterFlush() throws IOException {
+        _store.save(createSector(1, 0, 0, 5));
+        _store.save(createSector(2, 0, 0, 7));
+        _store.save(createGrownSector(1, 0, 0));
+        _store.save(createSector(0, 0, 0, 3));
+        long length = fileLength();
+        assertEquals(3, _store.load(SECTOR_SIZE, 0, 0, 0).getFloor(1, 1));
+        _store.flush();
+        _store.save(createSector(0, 1, 0, 4));
+        assertEquals(length, fileLength());
+        assertEquals(4, _store.load(SECTOR_SIZE, 0, 1, 0).getFloor(1, 1));
+        assertEquals(3, _store.load(SECTOR_SIZE, 0, 0, 0).getFloor(1, 1));
+        assertEquals(7, _store.load(SECTOR_SIZE, 2, 0, 0).getFloor(1, 1));
+    }
+
+    @Test
+    public void testVacatedSlotIsFoundAgainOnReopen() throws IOException {
+        _store.save(createSector(1, 0, 0, 5));
+        _store.save(createSector(2, 0, 0, 7));
+        _store.save(createGrownSector(1, 0, 0));
+        _store.close();
+        _store = open();
+        long length = fileLength();
+        _store.save(createSector(0, 0, 0, 3));
+        assertEquals(length, fileLength());
+        assertEquals(3, _store.load(SECTOR_SIZE, 0, 0, 0).getFloor(1, 1));
+        assertEquals("Tree", _store.load(SECTOR_SIZE, 1, 0, 0).getItem(2, 2).getItem().name);
+    }
+}
@@ -1,7 +1,24 @@
 package com.hoten.gridia.map;
 
-import java.io.File;
+import com.hoten.gridia.content.ItemInstance;
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.scripting.Entity;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -9,6 +26,11 @@ public class TileMapTest {
 
     private TileMap _tileMap;
 
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        new TestContentLoader().load(); // sectors start out filled with ItemInstance.NONE
+    }
+
     @Before
     public void setUp() {
         int size = 100;
@@ -38,4 +60,285 @@ public class TileMapTest {
     public void testWrapValueWhenNegativeByAlot() {
         assertEquals(90, _tileMap.wrap(-510));
     }
+
+    private TileMap createLazyMap(List<Sector> loaded, List<Sector> saved) {
+        SectorLoader sectorLoader = (int sectorSize, int x, int y, int z) -> {
+            Sector sector = new Sector(sectorSize, x, y, z);
+            loaded.add(sector);
+            return sector;
+        };
+        SectorSaver sectorSaver = new SectorSaver(null) {
+            @Override
+            public void save(Sector sector) {
+                saved.add(sector);
+            }
+        };
+        return new TileMap(100, 1, 20, sectorLoader, sectorSaver);
+    }
+
+    @Test
+    public void testSectorsLoadOnFirstTouch() {
+        List<Sector> loaded = new ArrayList<>();
+        TileMap tileMap = createLazyMap(loaded, new ArrayList<>());
+        assertEquals(0, tileMap.getLoadedSectorCount());
+        Sector sector = tileMap.getSectorOf(25, 45, 0);
+        assertSame(sector, tileMap.getSector(1, 2, 0));
+        assertEquals(1, loaded.size());
+        assertEquals(1, tileMap.getLoadedSectorCount());
+    }
+
+    @Test
+    public void testUnreadableSectorIsReportedNotReplaced() {
+        TileMap tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> {
+            throw new IOException("bad sector");
+        }, new SectorSaver(null));
+        try {
+            tileMap.setFloor(25, 45, 0, 7);
+            fail();
+        } catch (UncheckedIOException ex) {
+            assertTrue(ex.getMessage().contains("1, 2, 0"));
+            assertEquals("bad sector", ex.getCause().getMessage());
+        }
+        assertEquals(0, tileMap.getLoadedSectorCount());
+        assertEquals(0, tileMap.getDirtySectorCount());
+    }
+
+    @Test
+    public void testParallelLoadAllLoadsEverySectorOnce() throws IOException {
+        List<Sector> loaded = Collections.synchronizedList(new ArrayList<>());
+        TileMap tileMap = createLazyMap(loaded, new ArrayList<>());
+        tileMap.getSector(3, 3, 0);
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        tileMap.loadAll(4, progress::add);
+        assertEquals(tileMap.sectorsTotal, loaded.size());
+        assertEquals(tileMap.sectorsTotal, tileMap.getLoadedSectorCount());
+        // pool threads may report their percentages out of order
+        assertEquals(IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toSet()), new HashSet<>(progress));
+        assertEquals(100, progress.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSectorsAreSavedAndEvicted() {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.setMaxLoadedSectors(3);
+        Sector first = tileMap.getSector(0, 0, 0);
+        Sector second = tileMap.getSector(1, 0, 0);
+        tileMap.setFloor(20, 0, 0, 5);
+        tileMap.getSector(2, 0, 0);
+        tileMap.getSector(0, 0, 0);
+        tileMap.getSector(3, 0, 0);
+        assertEquals(3, tileMap.getLoadedSectorCount());
+        assertEquals(1, saved.size());
+        assertSame(second, saved.get(0));
+        assertSame(first, tileMap.getSector(0, 0, 0));
+        assertNotSame(second, tileMap.getSector(1, 0, 0));
+    }
+
+    @Test
+    public void testSectorsInUseAreNotEvicted() {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.setMaxLoadedSectors(2);
+        Sector watched = tileMap.getSector(0, 0, 0);
+        tileMap.setSectorInUse(sector -> sector == watched);
+        Sector occupied = tileMap.getSector(1, 0, 0);
+        occupied.setCreature(3, 3, new Entity());
+        tileMap.setFloor(40, 0, 0, 5);
+        assertEquals(3, tileMap.getLoadedSectorCount());
+        assertTrue(saved.isEmpty());
+        tileMap.getSector(3, 0, 0);
+        assertEquals(3, tileMap.getLoadedSectorCount());
+        assertEquals(1, saved.size());
+        assertEquals(2, saved.get(0).sx);
+    }
+
+    @Test
+    public void testCleanSectorsAreEvictedWithoutSaving() {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.setMaxLoadedSectors(1);
+        tileMap.getSector(0, 0, 0);
+        tileMap.getSector(1, 0, 0);
+        assertEquals(1, tileMap.getLoadedSectorCount());
+        assertTrue(saved.isEmpty());
+    }
+
+    @Test
+    public void testSaveWritesOnlyDirtySectors() throws IOException {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.getSector(0, 0, 0);
+        tileMap.getSector(1, 0, 0);
+        tileMap.setItem(ItemInstance.NONE, 25, 5, 0);
+        tileMap.getSector(2, 0, 0).setOwner(3);
+        assertEquals(2, tileMap.getDirtySectorCount());
+        tileMap.save();
+        assertEquals(2, saved.size());
+        assertEquals(0, tileMap.getDirtySectorCount());
+        tileMap.save();
+        assertEquals(2, saved.size());
+    }
+
+    @Test
+    public void testSaveFlushesTheStore() throws IOException {
+        List<String> calls = new ArrayList<>();
+        TileMap tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z), new SectorSaver(null) {
+            @Override
+            public void save(Sector sector) {
+                calls.add("save");
+            }
+
+            @Override
+            public void flush() {
+                calls.add("flush");
+            }
+        });
+        tileMap.setFloor(5, 5, 0, 7);
+        tileMap.save();
+        assertEquals(Arrays.asList("save", "flush"), calls);
+    }
+
+    @Test
+    public void testTileOwnerChangesAreSaved() throws IOException {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.getSectorOf(5, 5, 0).setTileOwner(5, 5, 3);
+        assertEquals(1, tileMap.getDirtySectorCount());
+        tileMap.save();
+        assertEquals(3, saved.get(0).getTileOwner(5, 5));
+    }
+
+    @Test
+    public void testCreaturesAreTrackedPerTile() {
+        TileMap tileMap = createLazyMap(new ArrayList<>(), new ArrayList<>());
+        Coord loc = new Coord(-3, 42, 0);
+        Entity cre = new Entity();
+        tileMap.setFloor(loc, 1);
+        assertNull(tileMap.getCreature(loc));
+        tileMap.setCreature(loc, cre);
+        assertSame(cre, tileMap.getCreature(97, 42, 0));
+        assertTrue(tileMap.getSectorOf(loc).hasCreatures());
+        tileMap.setCreature(loc, null);
+        assertFalse(tileMap.getSectorOf(loc).hasCreatures());
+    }
+
+    @Test
+    public void testSnapshotsDoNotSeeLaterChanges() throws IOException {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.setFloor(5, 5, 0, 7);
+        List<Sector> snapshots = tileMap.snapshotDirtySectors();
+        tileMap.setFloor(5, 5, 0, 8);
+        assertEquals(1, snapshots.size());
+        assertEquals(1, tileMap.getDirtySectorCount());
+        tileMap.writeSnapshot(snapshots.get(0));
+        assertEquals(7, saved.get(0).getFloor(5, 5));
+        assertEquals(8, tileMap.getFloor(5, 5, 0));
+    }
+
+    @Test
+    public void testUnwrittenEvictedSectorIsReloadedFromPendingWrite() {
+        List<Sector> loaded = new ArrayList<>();
+        List<Sector> saved = new ArrayList<>();
+        List<Runnable> writes = new ArrayList<>();
+        TileMap tileMap = createLazyMap(loaded, saved);
+        tileMap.setWriteExecutor(writes::add);
+        tileMap.setMaxLoadedSectors(1);
+        tileMap.setFloor(5, 5, 0, 7);
+        tileMap.getSector(1, 0, 0);
+        assertEquals(1, writes.size());
+        assertEquals(7, tileMap.getFloor(5, 5, 0));
+        assertEquals(2, loaded.size());
+        writes.forEach(Runnable::run);
+        assertEquals(7, saved.get(0).getFloor(5, 5));
+    }
+
+    @Test
+    public void testFailedEvictedWriteIsReportedAndRetried() throws IOException {
+        List<Runnable> writes = new ArrayList<>();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z), new SectorSaver(null) {
+            @Override
+            public void save(Sector sector) throws IOException {
+                if (failing.get()) {
+                    throw new IOException("disk full");
+                }
+                saved.add(sector);
+            }
+        });
+        tileMap.setWriteExecutor(writes::add);
+        tileMap.setMaxLoadedSectors(1);
+        tileMap.setFloor(5, 5, 0, 7);
+        tileMap.getSector(1, 0, 0);
+        List<CompletableFuture<Boolean>> evicted = tileMap.getEvictedWrites();
+        assertEquals(1, evicted.size());
+        assertFalse(evicted.get(0).isDone());
+        writes.forEach(Runnable::run);
+        assertFalse(evicted.get(0).join());
+        assertTrue(tileMap.getEvictedWrites().isEmpty());
+        failing.set(false);
+        List<Sector> retried = tileMap.snapshotDirtySectors();
+        assertEquals(1, retried.size());
+        tileMap.writeSnapshot(retried.get(0));
+        assertEquals(7, saved.get(0).getFloor(5, 5));
+    }
+
+    @Test
+    public void testRejectedEvictedWriteIsReportedAndRetried() throws IOException {
+        List<Sector> saved = new ArrayList<>();
+        TileMap tileMap = createLazyMap(new ArrayList<>(), saved);
+        tileMap.setWriteExecutor(write -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        tileMap.setMaxLoadedSectors(1);
+        tileMap.setFloor(5, 5, 0, 7);
+        tileMap.getSector(1, 0, 0);
+        assertTrue(tileMap.getEvictedWrites().isEmpty());
+        assertEquals(7, tileMap.getFloor(5, 5, 0));
+        List<Sector> retried = tileMap.snapshotDirtySectors();
+        assertEquals(1, retried.size());
+        tileMap.writeSnapshot(retried.get(0));
+        assertEquals(7, saved.get(0).getFloor(5, 5));
+    }
+
+    @Test
+    public void testChangesRacingEvictionAreNotLost() throws Exception {
+        Map<Integer, Sector> disk = new ConcurrentHashMap<>();
+        TileMap tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> {
+            Sector stored = disk.get(x + y * 5);
+            return stored == null ? new Sector(sectorSize, x, y, z) : stored.snapshot();
+        }, new SectorSaver(null) {
+            @Override
+            public void save(Sector sector) {
+                disk.put(sector.sx + sector.sy * 5, sector.snapshot());
+            }
+        });
+        tileMap.setMaxLoadedSectors(1);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread evictor = new Thread(() -> {
+            for (int i = 0; !done.get(); i++) {
+                tileMap.getSector(1 + i % 4, 0, 0);
+            }
+        });
+        evictor.start();
+        List<String> lost = new ArrayList<>();
+        try {
+            for (int round = 1; round <= 5000 && lost.isEmpty(); round++) {
+                for (int x = 0; x < 20; x++) {
+                    tileMap.setFloor(x, 0, 0, round);
+                }
+                for (int x = 0; x < 20; x++) {
+                    if (tileMap.getFloor(x, 0, 0) != round) {
+                        lost.add("round " + round + ", x " + x);
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            evictor.join();
+        }
+        assertEquals(Collections.emptyList(), lost);
+    }
 }
@@ -0,0 +1,40 @@
+package com.hoten.gridia.scripting;
+
+import com.hoten.gridia.VirtualThreads;
+import groovy.lang.Closure;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Load test for the two ScriptExecutor modes, not run with the unit tests.
+ * Starts many every callbacks that each block for a while, like scripts
+ * waiting on i/o, and prints how late the callbacks started in each mode.
+ *
+ * args: callbacks (default 200), period in ms (100), blocking ms (20),
+ * seconds per mode (10)
+ */
+public class ScriptLatencyLoad {
+
+    public static void main(String[] args) throws InterruptedException {
+        int callbacks = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long period = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        long blocking = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        System.out.println(String.format("%d callbacks every %d ms, each blocking for %d ms, for %d s per mode (virtual threads %savailable)",
+                callbacks, period, blocking, seconds, VirtualThreads.isAvailable() ? "" : "not "));
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            ScriptExecutor executor = new ScriptExecutor(virtualThreads);
+            for (int i = 0; i < callbacks; i++) {
+                executor.every(new Closure<Object>(null) {
+                    public Object doCall() throws InterruptedException {
+                        Thread.sleep(blocking);
+                        return null;
+                    }
+                }, period);
+            }
+            Thread.sleep(seconds * 1000);
+            System.out.println(executor.latencyReport());
+            ((ExecutorService) executor.getScheduler()).shutdownNow();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,98 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Coord;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Load test for playAnimation, not run with the unit tests. Starts a server
+ * on a copy of a world without opening its port, and connects in-process
+ * clients that write to nowhere, spread at random over the top level of the
+ * map, each with the 3x3 sectors around its player loaded. Then plays
+ * animations at the players, first to everyone (playAnimationToAll, how
+ * every animation went out before) and then to those near (playAnimation).
+ * Prints microseconds per animation, median and best of the rounds, and how
+ * many clients each one was sent to.
+ *
+ * args: world (default worlds/demo-world), map (demo-city), clients (500),
+ * animations per round (1000), rounds (15)
+ */
+public class AnimationBroadcastLoad {
+
+    public static void main(String[] args) throws Exception {
+        File world = new File(args.length > 0 ? args[0] : "worlds/demo-world");
+        String mapName = args.length > 1 ? args[1] : "demo-city";
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int plays = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 15;
+
+        File copy = Files.createTempDirectory("gridia-load").toFile();
+        FileUtils.copyDirectory(world, copy);
+        ServingGridia server = new ServingGridia(copy, mapName, 0, new File(copy, "clientdata"), "clientdata");
+        server.setOutboundLimit(Integer.MAX_VALUE); // nothing is dropped, so every round queues the same
+        int sectorSize = server.tileMap.sectorSize;
+
+        Random random = new Random(3);
+        Set<Coord> taken = new HashSet<>();
+        List<ConnectionToGridiaClientHandler> connected = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Coord loc;
+            do {
+                loc = new Coord(random.nextInt(server.tileMap.size), random.nextInt(server.tileMap.size), 0);
+            } while (!taken.add(loc));
+            ConnectionToGridiaClientHandler client = new ConnectionToGridiaClientHandler(new NullSocketHandler(), server);
+            server.onTransportClientSettled(client);
+            client.player = server.playerFactory.create(server, "load" + i, "load");
+            server.moveCreatureTo(client.player.creature, loc, 0, true);
+            int sx = loc.x / sectorSize;
+            int sy = loc.y / sectorSize;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int across = server.tileMap.sectorsAcross;
+                    client.addToLoadedSectors(server.tileMap.getSector(Math.floorMod(sx + dx, across), Math.floorMod(sy + dy, across), 0));
+                }
+            }
+            connected.add(client);
+        }
+        MoveBroadcastLoad.drain(connected);
+
+        long near = 0;
+        for (int i = 0; i < plays; i++) {
+            Coord at = connected.get(i % clients).player.creature.location;
+            near += server.sectorSubscriptions.getSubscribersNear(at.x, at.y, at.z, server.getLocalRadius()).size();
+        }
+        String[] names = {"to everyone", "to those near"};
+        long[][] times = new long[names.length][rounds];
+        for (int round = 0; round < rounds; round++) {
+            for (int k = 0; k < names.length; k++) {
+                boolean all = k == 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < plays; i++) {
+                    Coord at = connected.get(i % clients).player.creature.location;
+                    if (all) {
+                        server.playAnimationToAll("diescream", at);
+                    } else {
+                        server.playAnimation("diescream", at);
+                    }
+                }
+                times[k][round] = System.nanoTime() - start;
+                MoveBroadcastLoad.drain(connected);
+            }
+        }
+        System.out.println(String.format("%d clients, %d animations per round, %d rounds, local radius %d", clients, plays, rounds, server.getLocalRadius()));
+        double[] recipients = {clients, near / (double) plays};
+        for (int k = 0; k < names.length; k++) {
+            Arrays.sort(times[k]);
+            System.out.println(String.format("%-14s median %.1f us/animation, best %.1f, %.1f clients each", names[k], times[k][rounds / 2] / 1e3 / plays, times[k][0] / 1e3 / plays, recipients[k]));
+        }
+        FileUtils.deleteQuietly(copy);
+        System.exit(0);
+    }
+}
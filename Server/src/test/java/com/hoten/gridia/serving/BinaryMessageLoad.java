@@ -0,0 +1,96 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.scripting.Entity;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Load test for the binary message forms, not run with the unit tests. There
+ * is no recorded session to replay, so this scripts one: a client watching a
+ * walking player and wandering monsters, with hits, tile changes and
+ * despawns, batched per 50 ms tick. Prints the bytes the session takes as
+ * JSON and as Binary frames, and the size of each message type both ways.
+ *
+ * args: monsters (default 20), seconds (60)
+ */
+public class BinaryMessageLoad {
+
+    public static void main(String[] args) throws Exception {
+        int monsters = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+
+        ContentManager contentManager = new TestContentLoader().load();
+        GridiaMessageToClientBuilder builder = new GridiaMessageToClientBuilder();
+        Random random = new Random(1);
+        List<Entity> creatures = new ArrayList<>();
+        for (int i = 0; i <= monsters; i++) {
+            Entity cre = new Entity();
+            cre.location = new Coord(100 + random.nextInt(40), 100 + random.nextInt(40), 0);
+            cre.setAttribute("life", 100);
+            cre.setAttribute("maxLife", 100);
+            creatures.add(cre);
+        }
+        Entity player = creatures.get(0);
+
+        long json = 0, binary = 0;
+        int messages = 0;
+        for (int tick = 0; tick < seconds * 20; tick++) {
+            List<EncodedMessage> batch = new ArrayList<>();
+            if (tick % 4 == 0) {
+                player.location = player.location.add(1, 0, 0);
+                batch.add(builder.moveCreature(player, 0, false, false, false));
+            }
+            for (Entity cre : creatures.subList(1, creatures.size())) {
+                if (random.nextInt(20) == 0) {
+                    cre.location = cre.location.add(random.nextInt(3) - 1, random.nextInt(3) - 1, 0);
+                    batch.add(builder.moveCreature(cre, 0, false, false, false));
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                Entity cre = creatures.get(1 + random.nextInt(monsters));
+                cre.setAttribute("life", random.nextInt(100));
+                batch.add(builder.setLife(cre));
+                batch.add(builder.animation("Attack", cre.location));
+            }
+            if (random.nextInt(15) == 0) {
+                Coord loc = new Coord(random.nextInt(200), random.nextInt(200), 0);
+                batch.add(builder.updateTile(loc, 1 + random.nextInt(5), contentManager.createItemInstance(1 + random.nextInt(50), 1)));
+            }
+            if (random.nextInt(60) == 0) {
+                batch.add(builder.removeCreature(creatures.get(1 + random.nextInt(monsters))));
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            ByteArrayOutputStream binaries = new ByteArrayOutputStream();
+            for (EncodedMessage message : batch) {
+                json += message.size();
+                message.writeBinaryTo(new DataOutputStream(binaries));
+                messages++;
+            }
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            EncodedMessage.writeBinaryFrame(new DataOutputStream(frame), binaries);
+            binary += frame.size();
+        }
+        System.out.println(String.format("%d messages in %d s: json %d bytes (%.1f/msg), binary %d bytes (%.1f/msg including frame headers), %.0f%% of the json size",
+                messages, seconds, json, json / (double) messages, binary, binary / (double) messages, 100.0 * binary / json));
+
+        Coord loc = new Coord(123, 87, 0);
+        Map<String, EncodedMessage> samples = new LinkedHashMap<>();
+        samples.put("MoveCreature", builder.moveCreature(player, 0, false, false, false));
+        samples.put("TileUpdate", builder.updateTile(loc, 3, contentManager.createItemInstance(40, 1)));
+        samples.put("SetLife", builder.setLife(creatures.get(3)));
+        samples.put("Animation", builder.animation("Attack", loc));
+        samples.put("RemoveCreature", builder.removeCreature(creatures.get(4)));
+        System.out.println("per message     json  binary");
+        samples.forEach((type, message) -> System.out.println(String.format("%-15s %4d  %6d", type, message.size(), message.binarySize())));
+    }
+}
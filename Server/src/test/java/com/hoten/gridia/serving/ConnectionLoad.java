@@ -0,0 +1,115 @@
+package com.hoten.gridia.serving;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test for the transports, not run with the unit tests. Point it at a
+ * running server, started with whichever gridia.transport is being measured.
+ * It connects idle clients, each doing the client files handshake, then holds
+ * them all open, reading and discarding whatever the server sends. Prints
+ * how many got through the handshake, how long it took, and how many the
+ * server dropped while they sat idle.
+ *
+ * args: host (default localhost), port (1044), clients (1000), hold seconds (30)
+ */
+public class ConnectionLoad {
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 1044;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        long hold = args.length > 3 ? Long.parseLong(args[3]) : 30;
+
+        List<SocketChannel> connected = Collections.synchronizedList(new ArrayList<>());
+        List<Long> handshakeNanos = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService connectors = Executors.newFixedThreadPool(64);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            connectors.execute(() -> {
+                try {
+                    long began = System.nanoTime();
+                    SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                    handshake(channel);
+                    handshakeNanos.add(System.nanoTime() - began);
+                    connected.add(channel);
+                } catch (IOException ex) {
+                    // counted as a failure below
+                }
+            });
+        }
+        connectors.shutdown();
+        connectors.awaitTermination(10, TimeUnit.MINUTES);
+        long connecting = System.nanoTime() - start;
+
+        List<Long> sorted = new ArrayList<>(handshakeNanos);
+        Collections.sort(sorted);
+        System.out.println(String.format("%d of %d clients connected in %.1f s", connected.size(), clients, connecting / 1e9));
+        if (!sorted.isEmpty()) {
+            System.out.println(String.format("handshake: median %.1f ms, 99th percentile %.1f ms, max %.1f ms",
+                    percentile(sorted, 50), percentile(sorted, 99), sorted.get(sorted.size() - 1) / 1e6));
+        }
+        System.out.println(String.format("dropped while idle for %d s: %d", hold, holdOpen(connected, hold)));
+        System.exit(0);
+    }
+
+    // mirrors the client's side of ClientFiles.serve, asking for no files
+    private static void handshake(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(channel.socket().getInputStream());
+        DataOutputStream out = new DataOutputStream(channel.socket().getOutputStream());
+        in.readUTF(); // where the client keeps its files
+        in.readUTF(); // their hashes
+        out.writeUTF("[]");
+        out.flush();
+        if (in.readInt() != 0) {
+            throw new IOException("Sent files that weren't asked for");
+        }
+        out.writeByte(0);
+        out.flush();
+    }
+
+    private static double percentile(List<Long> sorted, int percent) {
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percent / 100)) / 1e6;
+    }
+
+    private static int holdOpen(List<SocketChannel> channels, long seconds) throws IOException {
+        Selector selector = Selector.open();
+        for (SocketChannel channel : channels) {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+        ByteBuffer discard = ByteBuffer.allocate(64 * 1024);
+        int dropped = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            selector.select(100);
+            for (SelectionKey key : selector.selectedKeys()) {
+                discard.clear();
+                int read;
+                try {
+                    read = ((SocketChannel) key.channel()).read(discard);
+                } catch (IOException ex) {
+                    read = -1;
+                }
+                if (read < 0) {
+                    key.cancel();
+                    dropped++;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        return dropped;
+    }
+}
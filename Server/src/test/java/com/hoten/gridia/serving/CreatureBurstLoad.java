@@ -0,0 +1,102 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.scripting.Entity;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Load test for sendCreatures, the burst a client gets on logging in, not run
+ * with the unit tests. Starts a server on a copy of a world without opening
+ * its port, fills the top level of the map with monsters, and connects
+ * in-process clients that write to nowhere, spread at random, each with the
+ * 3x3 sectors around its player loaded. Prints how many AddCreature messages
+ * each client is sent and the microseconds per burst, median and best of the
+ * rounds, against sending every creature on the map as before. That one is
+ * timed on the first 20 clients only, as it queues thousands of messages each.
+ *
+ * args: world (default worlds/demo-world), map (demo-city), clients (500),
+ * monsters (5000), rounds (15)
+ */
+public class CreatureBurstLoad {
+
+    public static void main(String[] args) throws Exception {
+        File world = new File(args.length > 0 ? args[0] : "worlds/demo-world");
+        String mapName = args.length > 1 ? args[1] : "demo-city";
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int monsters = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 15;
+
+        File copy = Files.createTempDirectory("gridia-load").toFile();
+        FileUtils.copyDirectory(world, copy);
+        ServingGridia server = new ServingGridia(copy, mapName, 0, new File(copy, "clientdata"), "clientdata");
+        server.setOutboundLimit(Integer.MAX_VALUE); // nothing is dropped, so every round queues the same
+        int size = server.tileMap.size;
+        int sectorSize = server.tileMap.sectorSize;
+        int across = server.tileMap.sectorsAcross;
+
+        Random random = new Random(3);
+        Set<Coord> taken = new HashSet<>();
+        for (int i = 0; i < monsters; i++) {
+            Coord loc;
+            do {
+                loc = new Coord(random.nextInt(size), random.nextInt(size), 0);
+            } while (!taken.add(loc) || server.tileMap.getCreature(loc) != null);
+            Entity monster = server.createCreatureQuietly(server.createDefaultCreatureImage(), "Monster", loc, false, false);
+            server.tileMap.setCreature(loc, monster);
+            server.creatures.put(monster.id, monster);
+        }
+        List<ConnectionToGridiaClientHandler> connected = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Coord loc;
+            do {
+                loc = new Coord(random.nextInt(size), random.nextInt(size), 0);
+            } while (!taken.add(loc));
+            ConnectionToGridiaClientHandler client = new ConnectionToGridiaClientHandler(new NullSocketHandler(), server);
+            server.onTransportClientSettled(client);
+            client.player = server.playerFactory.create(server, "load" + i, "load");
+            server.moveCreatureTo(client.player.creature, loc, 0, true);
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    client.addToLoadedSectors(server.tileMap.getSector(Math.floorMod(loc.x / sectorSize + dx, across), Math.floorMod(loc.y / sectorSize + dy, across), 0));
+                }
+            }
+            connected.add(client);
+        }
+        MoveBroadcastLoad.drain(connected);
+
+        long seen = 0;
+        for (ConnectionToGridiaClientHandler client : connected) {
+            seen += server.creatures.values().stream().filter(cre -> server.canSee(client, cre)).count();
+        }
+        List<ConnectionToGridiaClientHandler> sample = connected.subList(0, Math.min(20, clients));
+        long[] everyTimes = new long[rounds];
+        long[] times = new long[rounds];
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (ConnectionToGridiaClientHandler client : sample) {
+                server.creatures.values().forEach(cre -> server.sendTo(server.messageBuilder.addCreature(cre), client));
+            }
+            everyTimes[round] = System.nanoTime() - start;
+            MoveBroadcastLoad.drain(sample);
+            start = System.nanoTime();
+            connected.forEach(server::sendCreatures);
+            times[round] = System.nanoTime() - start;
+            MoveBroadcastLoad.drain(connected);
+        }
+        Arrays.sort(everyTimes);
+        Arrays.sort(times);
+        System.out.println(String.format("%d clients, %d creatures on the map, %d rounds", clients, server.creatures.size(), rounds));
+        System.out.println(String.format("every creature  AddCreature per burst %d, median %.1f us/burst, best %.1f", server.creatures.size(), everyTimes[rounds / 2] / 1e3 / sample.size(), everyTimes[0] / 1e3 / sample.size()));
+        System.out.println(String.format("those loaded    AddCreature per burst %.1f, median %.1f us/burst, best %.1f", seen / (double) clients, times[rounds / 2] / 1e3 / clients, times[0] / 1e3 / clients));
+        FileUtils.deleteQuietly(copy);
+        System.exit(0);
+    }
+}
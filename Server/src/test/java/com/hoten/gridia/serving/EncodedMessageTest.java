@@ -0,0 +1,80 @@
+package com.hoten.gridia.serving;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EncodedMessageTest {
+
+    @Test
+    public void testFrameMatchesWhatTheClientReads() throws IOException {
+        EncodedMessage message = EncodedMessage.json("Chat")
+                .set("user", "WORLD")
+                .set("text", "hi")
+                .build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.writeTo(new DataOutputStream(bytes));
+        assertEquals(message.size(), bytes.size());
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] data = new byte[in.readInt()];
+        assertEquals("Chat", in.readUTF());
+        assertFalse(in.readBoolean());
+        in.readFully(data);
+        assertEquals("{\"user\":\"WORLD\",\"text\":\"hi\"}", new String(data, StandardCharsets.UTF_8));
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testSameBytesForEveryWrite() throws IOException {
+        EncodedMessage message = EncodedMessage.json("Animation").set("name", "WarpIn").build();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        message.writeTo(new DataOutputStream(first));
+        message.writeTo(new DataOutputStream(second));
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    @Test
+    public void testVarInts() {
+        assertArrayEquals(new byte[]{0}, new CompactOutput().writeVarInt(0).toByteArray());
+        assertArrayEquals(new byte[]{127}, new CompactOutput().writeVarInt(127).toByteArray());
+        assertArrayEquals(new byte[]{(byte) 0x80, 1}, new CompactOutput().writeVarInt(128).toByteArray());
+        assertArrayEquals(new byte[]{(byte) 0xAC, 2}, new CompactOutput().writeVarInt(300).toByteArray());
+        assertArrayEquals(new byte[]{1}, new CompactOutput().writeSignedVarInt(-1).toByteArray());
+        assertArrayEquals(new byte[]{4}, new CompactOutput().writeSignedVarInt(2).toByteArray());
+        assertEquals(5, new CompactOutput().writeVarInt(-1).toByteArray().length);
+    }
+
+    @Test
+    public void testBinaryFormsAreFramedTogether() throws IOException {
+        EncodedMessage first = EncodedMessage.json("RemoveCreature").set("id", 300)
+                .binary(6, out -> out.writeVarInt(300))
+                .build();
+        EncodedMessage second = EncodedMessage.json("Animation").set("name", "Hit")
+                .binary(4, out -> out.writeString("Hit"))
+                .build();
+        assertTrue(first.hasBinary());
+        assertFalse(EncodedMessage.json("Chat").build().hasBinary());
+        assertEquals(3, first.binarySize());
+
+        ByteArrayOutputStream binaries = new ByteArrayOutputStream();
+        first.writeBinaryTo(new DataOutputStream(binaries));
+        second.writeBinaryTo(new DataOutputStream(binaries));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        EncodedMessage.writeBinaryFrame(new DataOutputStream(bytes), binaries);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] data = new byte[in.readInt()];
+        assertEquals(EncodedMessage.BINARY_TYPE, in.readUTF());
+        assertFalse(in.readBoolean());
+        in.readFully(data);
+        assertArrayEquals(new byte[]{6, (byte) 0xAC, 2, 4, 3, 'H', 'i', 't'}, data);
+        assertEquals(-1, in.read());
+    }
+}
@@ -0,0 +1,74 @@
+package com.hoten.gridia.serving;
+
+import com.google.gson.JsonObject;
+import com.hoten.servingjava.message.JsonMessageHandler;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MessageDispatcherTest {
+
+    // found by name, like the classes in the protocols package
+    public static class Record extends JsonMessageHandler<ConnectionToGridiaClientHandler> {
+
+        static final List<JsonObject> handled = new ArrayList<>();
+
+        @Override
+        protected void handle(ConnectionToGridiaClientHandler connection, JsonObject data) throws IOException {
+            if (data.has("fail")) {
+                throw new IOException(data.get("fail").getAsString());
+            }
+            handled.add(data);
+        }
+    }
+
+    private final MessageDispatcher _dispatcher = new MessageDispatcher("com.hoten.gridia.serving");
+
+    @Before
+    public void setUp() {
+        Record.handled.clear();
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMessageGoesToHandlerNamedAfterType() throws IOException {
+        _dispatcher.dispatch(null, "MessageDispatcherTest$Record", utf8("{\"a\":1}"), false);
+        assertEquals(1, Record.handled.size());
+        assertEquals(1, Record.handled.get(0).get("a").getAsInt());
+    }
+
+    @Test
+    public void testCompressedMessageIsInflated() throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(utf8("{\"a\":2}"));
+        }
+        _dispatcher.dispatch(null, "MessageDispatcherTest$Record", gzipped.toByteArray(), true);
+        assertEquals(2, Record.handled.get(0).get("a").getAsInt());
+    }
+
+    @Test
+    public void testHandlerExceptionIsRethrown() {
+        try {
+            _dispatcher.dispatch(null, "MessageDispatcherTest$Record", utf8("{\"fail\":\"no\"}"), false);
+            fail();
+        } catch (IOException ex) {
+            assertEquals("no", ex.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTypeIsRejected() throws IOException {
+        _dispatcher.dispatch(null, "NoSuchMessage", utf8("{}"), false);
+    }
+}
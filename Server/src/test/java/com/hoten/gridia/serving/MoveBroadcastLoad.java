@@ -0,0 +1,108 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.scripting.Entity;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Load test for moveCreatureTo, not run with the unit tests. Starts a server
+ * on a copy of a world without opening its port, and connects in-process
+ * clients that write to nowhere, each with the 3x3 sectors around its player
+ * loaded. Then times a monster stepping back and forth within a sector and
+ * across a sector edge, and a player stepping within a sector. Prints
+ * microseconds per move, median and best of the rounds. The time is spent
+ * queueing the messages; writing them out happens between rounds.
+ *
+ * args: world (default worlds/demo-world), map (demo-city), clients (500),
+ * moves per round (1000), rounds (15)
+ */
+public class MoveBroadcastLoad {
+
+    public static void main(String[] args) throws Exception {
+        File world = new File(args.length > 0 ? args[0] : "worlds/demo-world");
+        String mapName = args.length > 1 ? args[1] : "demo-city";
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 15;
+
+        File copy = Files.createTempDirectory("gridia-load").toFile();
+        FileUtils.copyDirectory(world, copy);
+        ServingGridia server = new ServingGridia(copy, mapName, 0, new File(copy, "clientdata"), "clientdata");
+        server.setOutboundLimit(Integer.MAX_VALUE); // nothing is dropped, so every round queues the same
+        int sectorSize = server.tileMap.sectorSize;
+
+        // the players stand around the spawn, with a sector edge running between them
+        Coord spawn = server.tileMap.getDefaultPlayerSpawn();
+        int edgeX = (spawn.x / sectorSize + 1) * sectorSize;
+        Random random = new Random(3);
+        Set<Coord> taken = new HashSet<>();
+        List<ConnectionToGridiaClientHandler> connected = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Coord loc;
+            do {
+                loc = new Coord(edgeX - 50 + random.nextInt(100), spawn.y - 50 + random.nextInt(100), spawn.z);
+            } while (Math.abs(loc.x - edgeX) < 2 || taken.contains(loc) || taken.contains(loc.add(0, 1, 0)));
+            taken.add(loc);
+            taken.add(loc.add(0, 1, 0)); // the first player steps there
+
+            ConnectionToGridiaClientHandler client = new ConnectionToGridiaClientHandler(new NullSocketHandler(), server);
+            server.onTransportClientSettled(client);
+            client.player = server.playerFactory.create(server, "load" + i, "load");
+            server.moveCreatureTo(client.player.creature, loc, 0, true);
+            int sx = server.tileMap.wrap(loc.x) / sectorSize;
+            int sy = server.tileMap.wrap(loc.y) / sectorSize;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    client.addToLoadedSectors(server.tileMap.getSector(sx + dx, sy + dy, loc.z));
+                }
+            }
+            connected.add(client);
+        }
+        drain(connected);
+
+        Entity monster = server.createCreatureQuietly(server.createDefaultCreatureImage(), "Monster", new Coord(edgeX - 1, spawn.y, spawn.z), false, false);
+        server.tileMap.setCreature(monster.location, monster);
+        Entity player = connected.get(0).player.creature;
+        Coord home = player.location;
+        String[] names = {"monster within sector", "monster across sectors", "player within sector"};
+        long[][] times = new long[names.length][rounds];
+        for (int round = 0; round < rounds; round++) {
+            times[0][round] = time(connected, moves, i -> server.moveCreatureTo(monster, new Coord(edgeX - 1, spawn.y + i % 2, spawn.z), 0, false));
+            times[1][round] = time(connected, moves, i -> server.moveCreatureTo(monster, new Coord(edgeX - 1 + i % 2, spawn.y, spawn.z), 0, false));
+            times[2][round] = time(connected, moves, i -> server.moveCreatureTo(player, new Coord(home.x, home.y + i % 2, home.z), 0, false));
+        }
+        System.out.println(String.format("%d clients, %d moves per round, %d rounds", clients, moves, rounds));
+        for (int k = 0; k < names.length; k++) {
+            Arrays.sort(times[k]);
+            System.out.println(String.format("%-24s median %.1f us/move, best %.1f", names[k], times[k][rounds / 2] / 1e3 / moves, times[k][0] / 1e3 / moves));
+        }
+        FileUtils.deleteQuietly(copy);
+        System.exit(0);
+    }
+
+    private static long time(List<ConnectionToGridiaClientHandler> clients, int moves, IntConsumer move) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 1; i <= moves; i++) {
+            move.accept(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        drain(clients);
+        return elapsed;
+    }
+
+    // lets the writers empty every queue, so that one round doesn't slow the next
+    static void drain(List<ConnectionToGridiaClientHandler> clients) throws InterruptedException {
+        while (clients.stream().anyMatch(client -> client.getOutboundQueue().getDepth() > 0)) {
+            Thread.sleep(5);
+        }
+    }
+}
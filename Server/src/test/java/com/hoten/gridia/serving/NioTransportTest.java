@@ -0,0 +1,226 @@
+package com.hoten.gridia.serving;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class NioTransportTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    // records what arrives instead of finding a protocol for it
+    private class RecordingDispatcher extends MessageDispatcher {
+
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        RecordingDispatcher() {
+            super(null);
+        }
+
+        @Override
+        public void dispatch(ConnectionToGridiaClientHandler connection, String type, byte[] data, boolean compressed) throws IOException {
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            received.add(type + " " + data.length + " " + compressed);
+            if (type.equals("Echo")) {
+                _handler.getOutputStream().write(data);
+            }
+        }
+    }
+
+    private final RecordingDispatcher _dispatcher = new RecordingDispatcher();
+    private final CountDownLatch _settled = new CountDownLatch(1);
+    private NioTransport.IoLoop _loop;
+    private NioSocketHandler _handler;
+    private Socket _client;
+    private DataInputStream _in;
+    private DataOutputStream _out;
+
+    @Before
+    public void setUp() throws IOException {
+        File clientData = _folder.newFolder("clientdata");
+        FileUtils.writeStringToFile(new File(clientData, "items.json"), "[]");
+        NioTransport transport = new NioTransport(null, 0, new ClientFiles(clientData, "worlds/test/clientdata"), _dispatcher, 1);
+        _loop = new NioTransport.IoLoop("Test selector");
+        _loop.start();
+        try (ServerSocketChannel acceptor = ServerSocketChannel.open()) {
+            acceptor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            _client = new Socket(InetAddress.getLoopbackAddress(), acceptor.socket().getLocalPort());
+            SocketChannel channel = acceptor.accept();
+            channel.configureBlocking(false);
+            _handler = new NioSocketHandler(channel, transport, _loop);
+        }
+        _client.setSoTimeout(10000);
+        _in = new DataInputStream(_client.getInputStream());
+        _out = new DataOutputStream(_client.getOutputStream());
+        _handler.start(_settled::countDown, null);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        _dispatcher.blocked.countDown();
+        _client.close();
+        _handler.close();
+        _loop.stop();
+    }
+
+    private void handshake(String request) throws IOException {
+        assertEquals("worlds/test/clientdata", _in.readUTF());
+        assertTrue(_in.readUTF().contains("items.json"));
+        _out.writeUTF(request);
+        _out.flush();
+    }
+
+    private void finishHandshake() throws IOException, InterruptedException {
+        _out.writeByte(0);
+        _out.flush();
+        assertTrue(_settled.await(10, TimeUnit.SECONDS));
+    }
+
+    private static byte[] frame(String type, byte[] data, boolean compressed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(data.length);
+        out.writeUTF(type);
+        out.writeBoolean(compressed);
+        out.write(data);
+        return bytes.toByteArray();
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && _dispatcher.received.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, _dispatcher.received.size());
+    }
+
+    @Test
+    public void testHandshakeSendsRequestedFiles() throws Exception {
+        handshake("[\"items.json\", \"../secret.txt\"]");
+        assertEquals(1, _in.readInt());
+        assertEquals("items.json", _in.readUTF());
+        byte[] data = new byte[_in.readInt()];
+        _in.readFully(data);
+        assertEquals("[]", new String(data, StandardCharsets.UTF_8));
+        assertEquals(1, _settled.getCount());
+        finishHandshake();
+    }
+
+    @Test
+    public void testFragmentedFramesRoundTrip() throws Exception {
+        handshake("[]");
+        assertEquals(0, _in.readInt());
+        finishHandshake();
+
+        byte[] large = new byte[20000]; // bigger than the read buffer
+        Arrays.fill(large, (byte) '1');
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write("{}".getBytes(StandardCharsets.UTF_8));
+        }
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(frame("Echo", "{\"a\":1}".getBytes(StandardCharsets.UTF_8), false));
+        frames.write(frame("Echo", large, false));
+        frames.write(frame("Zipped", gzipped.toByteArray(), true));
+        byte[] bytes = frames.toByteArray();
+        // a byte at a time through the first frame, then in uneven chunks
+        for (int i = 0; i < bytes.length; i += i < 20 ? 1 : 4093) {
+            _out.write(bytes, i, Math.min(i < 20 ? 1 : 4093, bytes.length - i));
+            _out.flush();
+            Thread.sleep(2);
+        }
+
+        awaitReceived(3);
+        assertEquals(Arrays.asList("Echo 7 false", "Echo 20000 false", "Zipped " + gzipped.size() + " true"), _dispatcher.received);
+        byte[] echoed = new byte[7 + large.length];
+        _in.readFully(echoed);
+        assertEquals("{\"a\":1}", new String(echoed, 0, 7, StandardCharsets.UTF_8));
+        assertArrayEquals(large, Arrays.copyOfRange(echoed, 7, echoed.length));
+    }
+
+    @Test
+    public void testSendersWaitForSlowClient() throws Exception {
+        handshake("[]");
+        assertEquals(0, _in.readInt());
+        finishHandshake();
+
+        int total = 32 << 20; // far more than the pending limit and the socket buffers
+        Thread sender = new Thread(() -> {
+            byte[] chunk = new byte[64 * 1024];
+            try {
+                for (int sent = 0; sent < total; sent += chunk.length) {
+                    for (int i = 0; i < chunk.length; i++) {
+                        chunk[i] = (byte) (sent + i);
+                    }
+                    _handler.getOutputStream().write(chunk);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        sender.start();
+        sender.join(1000);
+        assertTrue(sender.isAlive());
+
+        byte[] buffer = new byte[64 * 1024];
+        for (int read = 0; read < total;) {
+            int n = _in.read(buffer, 0, Math.min(buffer.length, total - read));
+            assertTrue(n > 0);
+            for (int i = 0; i < n; i++) {
+                assertEquals((byte) (read + i), buffer[i]);
+            }
+            read += n;
+        }
+        sender.join(10000);
+        assertFalse(sender.isAlive());
+    }
+
+    @Test
+    public void testReadingPausesForSlowHandlerWithoutLosingMessages() throws Exception {
+        handshake("[]");
+        assertEquals(0, _in.readInt());
+        finishHandshake();
+
+        _dispatcher.blocked = new CountDownLatch(1);
+        for (int i = 0; i < 1000; i++) {
+            _out.write(frame("Message" + i, new byte[0], false));
+        }
+        _out.flush();
+        Thread.sleep(200);
+        assertTrue(_dispatcher.received.isEmpty());
+        _dispatcher.blocked.countDown();
+
+        awaitReceived(1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Message" + i + " 0 false", _dispatcher.received.get(i));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.servingjava.SocketHandler;
+import com.hoten.servingjava.message.Message;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+
+// for the in-process clients of the load tests, whose writes go nowhere
+class NullSocketHandler implements SocketHandler {
+
+    private final DataOutputStream _out = new DataOutputStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    @Override
+    public void start(Runnable onConnectionSettled, SocketHandler topLevelSocketHandler) {
+    }
+
+    @Override
+    public void send(Message message) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public DataOutputStream getOutputStream() {
+        return _out;
+    }
+
+    @Override
+    public DataInputStream getInputStream() {
+        return null;
+    }
+}
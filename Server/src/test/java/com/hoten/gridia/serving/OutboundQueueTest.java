@@ -0,0 +1,148 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.scripting.Entity;
+import com.hoten.gridia.serving.OutboundQueue.OverflowPolicy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class OutboundQueueTest {
+
+    // runs nothing until asked, like a writer that is stuck on a slow socket
+    private static class ManualExecutor implements Executor {
+
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private final ManualExecutor _writers = new ManualExecutor();
+    private final List<String> _written = new ArrayList<>();
+    private int _failures;
+
+    private OutboundQueue create(int limit, OverflowPolicy policy) {
+        return new OutboundQueue(limit, policy, _writers, () -> _failures++);
+    }
+
+    private boolean offer(OutboundQueue queue, String key, String value) {
+        return queue.offer(key, () -> _written.add(value));
+    }
+
+    @Test
+    public void testWritesInOrderOnTheWriter() {
+        OutboundQueue queue = create(10, OverflowPolicy.DISCONNECT);
+        offer(queue, null, "a");
+        offer(queue, null, "b");
+        assertTrue(_written.isEmpty());
+        assertEquals(2, queue.getDepth());
+        _writers.runAll();
+        assertEquals("[a, b]", _written.toString());
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getPeakDepth());
+    }
+
+    @Test
+    public void testDisconnectsWhenFull() {
+        OutboundQueue queue = create(2, OverflowPolicy.DISCONNECT);
+        assertTrue(offer(queue, "k", "a"));
+        assertTrue(offer(queue, "k", "b"));
+        assertFalse(offer(queue, "k", "c"));
+        _writers.runAll();
+        assertTrue(_written.isEmpty());
+        assertEquals(1, _failures);
+        assertFalse(offer(queue, null, "d"));
+    }
+
+    @Test
+    public void testDropsSupersededWhenFull() {
+        OutboundQueue queue = create(3, OverflowPolicy.DROP_SUPERSEDED);
+        offer(queue, "move 1", "move 1 to a");
+        offer(queue, null, "chat");
+        offer(queue, "move 2", "move 2 to a");
+        assertTrue(offer(queue, "move 1", "move 1 to b"));
+        assertEquals(1, queue.getDropped());
+        _writers.runAll();
+        assertEquals("[chat, move 2 to a, move 1 to b]", _written.toString());
+        assertEquals(0, _failures);
+    }
+
+    @Test
+    public void testDisconnectsWhenNothingCanBeDropped() {
+        OutboundQueue queue = create(2, OverflowPolicy.DROP_SUPERSEDED);
+        offer(queue, null, "a");
+        offer(queue, "k", "b");
+        assertFalse(offer(queue, null, "c"));
+        _writers.runAll();
+        assertEquals(1, _failures);
+    }
+
+    @Test
+    public void testBatchIsCollapsedAndFlushedOnce() {
+        OutboundQueue queue = new OutboundQueue(10, OverflowPolicy.DISCONNECT, _writers, () -> _failures++, 0, () -> _written.add("flush"));
+        offer(queue, "tile 1", "tile 1 is grass");
+        offer(queue, "tile 2", "tile 2 is grass");
+        offer(queue, null, "chat");
+        offer(queue, "tile 1", "tile 1 is water");
+        _writers.runAll();
+        assertEquals("[tile 2 is grass, chat, tile 1 is water, flush]", _written.toString());
+        assertEquals(1, queue.getCollapsed());
+        assertEquals(0, queue.getDropped());
+        assertEquals(3, queue.getAverageBatchSize(), 0);
+    }
+
+    @Test
+    public void testStepOriginsSurviveCollapsing() {
+        GridiaMessageToClientBuilder builder = new GridiaMessageToClientBuilder();
+        Entity cre = new Entity();
+        cre.location = new Coord(1, 1, 0);
+        OutboundQueue queue = create(10, OverflowPolicy.DISCONNECT);
+        offer(queue, builder.stepFrom(cre, false, false).getSupersedeKey(), "from 1");
+        cre.location = new Coord(2, 1, 0);
+        offer(queue, builder.moveCreature(cre, 200, false, false, false).getSupersedeKey(), "to 2");
+        offer(queue, builder.stepFrom(cre, false, false).getSupersedeKey(), "from 2");
+        cre.location = new Coord(3, 1, 0);
+        offer(queue, builder.moveCreature(cre, 200, false, false, false).getSupersedeKey(), "to 3");
+        _writers.runAll();
+        assertEquals("[from 1, from 2, to 3]", _written.toString());
+    }
+
+    @Test
+    public void testFailedWriteGivesUpOnClient() {
+        OutboundQueue queue = create(10, OverflowPolicy.DISCONNECT);
+        queue.offer(null, () -> {
+            throw new IOException("broken pipe");
+        });
+        offer(queue, null, "a");
+        _writers.runAll();
+        assertTrue(_written.isEmpty());
+        assertEquals(1, _failures);
+        assertTrue(queue.isClosed());
+    }
+
+    @Test
+    public void testBrokenWriteGivesUpOnClient() {
+        OutboundQueue queue = create(10, OverflowPolicy.DISCONNECT);
+        queue.offer(null, () -> {
+            throw new IllegalStateException("bad message");
+        });
+        _writers.runAll();
+        assertEquals(1, _failures);
+        assertTrue(queue.isClosed());
+        assertFalse(offer(queue, null, "a"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.DefaultCreatureImage;
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.map.Sector;
+import com.hoten.gridia.scripting.Entity;
+import java.util.Arrays;
+
+/**
+ * Load test for SectorDataCache, not run with the unit tests. Fills a sector
+ * with items on every third tile and a few creatures, then times encoding
+ * its SectorData on every request, as before the cache, against taking it
+ * from the cache. Prints the time per request, median and best of the
+ * rounds.
+ *
+ * args: sector size (default 20), creatures (10), requests per round
+ * (100000), rounds (15)
+ */
+public class SectorDataCacheLoad {
+
+    public static void main(String[] args) throws Exception {
+        int sectorSize = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int creatures = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+
+        ContentManager contentManager = new TestContentLoader().load();
+        GridiaMessageToClientBuilder builder = new GridiaMessageToClientBuilder();
+        Sector sector = new Sector(sectorSize, 0, 0, 0);
+        for (int i = 0; i < sectorSize * sectorSize; i += 3) {
+            sector.setItem(i / sectorSize, i % sectorSize, contentManager.createItemInstance(1 + i % 50));
+        }
+        for (int i = 0; i < creatures; i++) {
+            Entity cre = new Entity();
+            cre.location = new Coord(i % sectorSize, i / sectorSize, 0);
+            cre.setAttribute("name", "Monster " + i);
+            cre.setAttribute("image", new DefaultCreatureImage(5, 1, 1));
+            sector.setCreature(cre.location.x, cre.location.y, cre);
+        }
+        SectorDataCache cache = new SectorDataCache(builder);
+
+        long[] encodeTimes = new long[rounds];
+        long[] hitTimes = new long[rounds];
+        long bytes = 0; // so neither loop is optimized away
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                bytes += builder.sectorData(sector, builder.sectorTiles(sector)).size();
+            }
+            encodeTimes[round] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                bytes += cache.get(sector).size();
+            }
+            hitTimes[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(encodeTimes);
+        Arrays.sort(hitTimes);
+        System.out.println(String.format("%dx%d sector, %d creatures, %d requests per round, %d rounds (%d bytes)", sectorSize, sectorSize, creatures, requests, rounds, bytes));
+        System.out.println(String.format("encoded   median %.2f us/request, best %.2f", encodeTimes[rounds / 2] / 1e3 / requests, encodeTimes[0] / 1e3 / requests));
+        System.out.println(String.format("cache hit median %.1f ns/request, best %.1f", hitTimes[rounds / 2] / (double) requests, hitTimes[0] / (double) requests));
+    }
+}
@@ -0,0 +1,132 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.content.ContentManager;
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.map.Coord;
+import com.hoten.gridia.map.Sector;
+import com.hoten.gridia.map.SectorSaver;
+import com.hoten.gridia.map.TileMap;
+import com.hoten.gridia.scripting.Entity;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SectorDataCacheTest {
+
+    private static ContentManager _contentManager;
+    private GridiaMessageToClientBuilder _builder;
+    private SectorDataCache _cache;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        _contentManager = new TestContentLoader().load();
+    }
+
+    @Before
+    public void setUp() {
+        _builder = new GridiaMessageToClientBuilder();
+        _cache = new SectorDataCache(_builder);
+    }
+
+    @Test
+    public void testUnchangedSectorIsEncodedOnce() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        EncodedMessage first = _cache.get(sector);
+        assertSame(first, _cache.get(sector));
+        assertEquals(1, _cache.getHits());
+        assertEquals(1, _cache.getMisses());
+        assertEquals(12 + 20 * 20 * 6 + 4, first.size() - "SectorData".length() - 7);
+    }
+
+    @Test
+    public void testChangesAreEncodedAgain() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        EncodedMessage first = _cache.get(sector);
+        sector.setItem(1, 1, _contentManager.createItemInstance(1));
+        EncodedMessage second = _cache.get(sector);
+        assertNotSame(first, second);
+
+        Entity cre = new Entity();
+        cre.location = new Coord(2, 2, 0);
+        cre.setAttribute("name", "Bill");
+        sector.setCreature(2, 2, cre);
+        assertNotSame(second, _cache.get(sector));
+        assertEquals(3, _cache.getMisses());
+    }
+
+    @Test
+    public void testSectorsAreCachedSeparately() {
+        Sector first = new Sector(20, 0, 0, 0);
+        Sector second = new Sector(20, 1, 0, 0);
+        assertNotSame(_cache.get(first), _cache.get(second));
+        _cache.get(first);
+        assertEquals(2, _cache.getMisses());
+    }
+
+    @Test
+    public void testClientWithCurrentTilesGetsNoTiles() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        String hash = SectorDataCache.hash(_builder.sectorTiles(sector));
+        EncodedMessage unchanged = _cache.get(sector, hash, false);
+        assertEquals("SectorDelta".length() + 7 + 16 + 4, unchanged.size());
+        assertSame(unchanged, _cache.get(sector, hash, false));
+        assertEquals(2, _cache.getUnchanged());
+    }
+
+    @Test
+    public void testClientWithRecentTilesGetsDelta() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        String hash = SectorDataCache.hash(_builder.sectorTiles(sector));
+        _cache.get(sector);
+        sector.setItem(1, 1, _contentManager.createItemInstance(1));
+        sector.setFloor(2, 3, 5);
+        EncodedMessage delta = _cache.get(sector, hash, false);
+        assertEquals("SectorDelta".length() + 7 + 16 + 2 * 10 + 4, delta.size());
+        assertEquals(1, _cache.getDeltas());
+    }
+
+    @Test
+    public void testTilesBetweenRequestsGetDelta() {
+        TileMap tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z), new SectorSaver(null));
+        tileMap.setBeforeTileChange(_cache::recordTiles);
+        Sector sector = tileMap.getSector(0, 0, 0);
+        _cache.get(sector);
+        // the client follows the first change as a tile update, then unloads the sector
+        tileMap.setItem(_contentManager.createItemInstance(1), 1, 1, 0);
+        String hash = SectorDataCache.hash(_builder.sectorTiles(sector));
+        tileMap.setFloor(2, 3, 0, 5);
+        EncodedMessage delta = _cache.get(sector, hash, false);
+        assertEquals("SectorDelta", delta.getType());
+        assertEquals("SectorDelta".length() + 7 + 16 + 10 + 4, delta.size());
+        assertEquals(1, _cache.getDeltas());
+    }
+
+    @Test
+    public void testUnknownTilesGetWholeSector() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        assertSame(_cache.get(sector), _cache.get(sector, "not a hash", false));
+        for (int i = 0; i < 5; i++) {
+            sector.setFloor(0, 0, i + 1);
+            _cache.get(sector);
+        }
+        sector.setFloor(0, 0, 10);
+        String forgotten = SectorDataCache.hash(new GridiaMessageToClientBuilder().sectorTiles(new Sector(20, 0, 0, 0)));
+        assertSame(_cache.get(sector), _cache.get(sector, forgotten, false));
+        assertEquals(0, _cache.getDeltas());
+    }
+
+    @Test
+    public void testCompactSectorsAreCachedToo() {
+        Sector sector = new Sector(20, 0, 0, 0);
+        EncodedMessage compact = _cache.get(sector, null, true);
+        assertEquals("SectorDataCompact", compact.getType());
+        // coordinates, one run of 400 tiles of floor 0, no items, no creatures
+        assertEquals("SectorDataCompact".length() + 7 + 3 + 3 + 1 + 4, compact.size());
+        assertSame(compact, _cache.get(sector, null, true));
+        assertEquals("SectorData", _cache.get(sector, null, false).getType());
+        sector.setFloor(0, 0, 3);
+        assertNotSame(compact, _cache.get(sector, null, true));
+    }
+}
@@ -0,0 +1,57 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.map.Sector;
+import com.hoten.gridia.map.TileMap;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Load test for sectorDataCompact, not run with the unit tests. Starts a
+ * server on a copy of a world without opening its port, and encodes every
+ * sector of the map both as SectorData and as SectorDataCompact. Prints the
+ * distribution of the bytes per sector, frame included.
+ *
+ * args: world (default worlds/demo-world), map (demo-city)
+ */
+public class SectorSizeLoad {
+
+    public static void main(String[] args) throws Exception {
+        File world = new File(args.length > 0 ? args[0] : "worlds/demo-world");
+        String mapName = args.length > 1 ? args[1] : "demo-city";
+
+        File copy = Files.createTempDirectory("gridia-load").toFile();
+        FileUtils.copyDirectory(world, copy);
+        ServingGridia server = new ServingGridia(copy, mapName, 0, new File(copy, "clientdata"), "clientdata");
+        TileMap tileMap = server.tileMap;
+        GridiaMessageToClientBuilder builder = server.messageBuilder;
+
+        List<Integer> plain = new ArrayList<>();
+        List<Integer> compact = new ArrayList<>();
+        for (int z = 0; z < tileMap.depth; z++) {
+            for (int sx = 0; sx < tileMap.sectorsAcross; sx++) {
+                for (int sy = 0; sy < tileMap.sectorsAcross; sy++) {
+                    Sector sector = tileMap.getSector(sx, sy, z);
+                    plain.add(builder.sectorData(sector, builder.sectorTiles(sector)).size());
+                    compact.add(builder.sectorDataCompact(sector).size());
+                }
+            }
+        }
+        System.out.println(String.format("%d sectors   min   p10   p50   p90   max   mean    total", plain.size()));
+        print("SectorData", plain);
+        print("SectorDataCompact", compact);
+        FileUtils.deleteQuietly(copy);
+        System.exit(0);
+    }
+
+    private static void print(String name, List<Integer> sizes) {
+        Collections.sort(sizes);
+        long total = sizes.stream().mapToLong(size -> size).sum();
+        int n = sizes.size();
+        System.out.println(String.format("%-17s %5d %5d %5d %5d %5d %6.0f %8d", name,
+                sizes.get(0), sizes.get(n / 10), sizes.get(n / 2), sizes.get(n * 9 / 10), sizes.get(n - 1), total / (double) n, total));
+    }
+}
@@ -0,0 +1,104 @@
+package com.hoten.gridia.serving;
+
+import com.hoten.gridia.content.TestContentLoader;
+import com.hoten.gridia.map.Sector;
+import com.hoten.gridia.map.SectorSaver;
+import com.hoten.gridia.map.TileMap;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SectorSubscriptionsTest {
+
+    private TileMap _tileMap;
+    private SectorSubscriptions<String> _subscriptions;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        new TestContentLoader().load();
+    }
+
+    @Before
+    public void setUp() {
+        _tileMap = new TileMap(100, 1, 20, (int sectorSize, int x, int y, int z) -> new Sector(sectorSize, x, y, z), new SectorSaver(null));
+        _subscriptions = new SectorSubscriptions<>(_tileMap);
+    }
+
+    @Test
+    public void testSubscribersAreTrackedPerSector() {
+        Sector first = _tileMap.getSector(0, 0, 0);
+        Sector second = _tileMap.getSector(1, 0, 0);
+        _subscriptions.subscribe("alice", first);
+        _subscriptions.subscribe("bob", first);
+        _subscriptions.subscribe("bob", second);
+        assertEquals(2, _subscriptions.getSubscribers(first).size());
+        assertTrue(_subscriptions.getSubscribers(second).contains("bob"));
+        assertTrue(_subscriptions.isSubscribed("alice", first));
+        assertFalse(_subscriptions.isSubscribed("alice", second));
+        assertFalse(_subscriptions.hasSubscribers(_tileMap.getSector(2, 0, 0)));
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        Sector first = _tileMap.getSector(0, 0, 0);
+        Sector second = _tileMap.getSector(1, 0, 0);
+        _subscriptions.subscribe("alice", first);
+        _subscriptions.subscribe("alice", second);
+        _subscriptions.unsubscribe("alice", first);
+        assertFalse(_subscriptions.hasSubscribers(first));
+        assertTrue(_subscriptions.isSubscribed("alice", second));
+        _subscriptions.unsubscribeAll("alice");
+        assertFalse(_subscriptions.hasSubscribers(second));
+        assertTrue(_subscriptions.getSubscriptions("alice").isEmpty());
+    }
+
+    @Test
+    public void testSubscriptionSurvivesReload() {
+        _subscriptions.subscribe("alice", new Sector(20, 3, 2, 0));
+        assertTrue(_subscriptions.isSubscribed("alice", _tileMap.getSector(3, 2, 0)));
+    }
+
+    @Test
+    public void testSubscribersNear() {
+        _subscriptions.subscribe("alice", _tileMap.getSector(0, 0, 0));
+        _subscriptions.subscribe("bob", _tileMap.getSector(4, 0, 0));
+        _subscriptions.subscribe("carol", _tileMap.getSector(2, 2, 0));
+        _subscriptions.subscribe("alice", _tileMap.getSector(1, 0, 0));
+        assertEquals(new HashSet<>(Arrays.asList("alice", "bob")), _subscriptions.getSubscribersNear(5, 5, 0, 10));
+        assertEquals(Collections.singleton("alice"), _subscriptions.getSubscribersNear(15, 5, 0, 4));
+        assertEquals(3, _subscriptions.getSubscribersNear(50, 50, 0, 1000).size());
+    }
+
+    @Test
+    public void testNothingIsLeftAfterUnsubscribeAll() throws InterruptedException {
+        for (int round = 0; round < 500; round++) {
+            String client = "client" + round;
+            CountDownLatch start = new CountDownLatch(1);
+            // requests still being handled as the client disconnects
+            Thread requests = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < 20; i++) {
+                    _subscriptions.subscribe(client, _tileMap.getSector(i % 5, 0, 0));
+                }
+            });
+            requests.start();
+            start.countDown();
+            _subscriptions.unsubscribeAll(client);
+            requests.join();
+            assertTrue(_subscriptions.getSubscriptions(client).isEmpty());
+            for (int sx = 0; sx < 5; sx++) {
+                assertFalse(_subscriptions.getSubscribers(_tileMap.getSector(sx, 0, 0)).contains(client));
+            }
+        }
+    }
+}
@@ -52,10 +52,5 @@ def randomWalk() {
 }
 
 def nearestPlayer(distance) {
-    def loc = server.findNearestTile(entity.location, distance, false) { coord ->
-        !!server.tileMap.getCreature(coord)?.belongsToPlayer
-    }
-    if (loc != null) {
-        server.tileMap.getCreature(loc)
-    }
+    nearestCreatures(range: distance, where: { it.belongsToPlayer }).find()
 }
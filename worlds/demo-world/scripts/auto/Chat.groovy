@@ -98,6 +98,10 @@ onChat { event ->
     } else if (message.equals("!online")) {
     Message message = server.messageBuilder.chat(server.whoIsOnline(), player.creature.location);
     connection.send(message);
+    } else if (message.equals("!queues") && player.isAdmin()) {
+    connection.send(server.messageBuilder.chat(server.outboundQueueReport(), player.creature.location));
+    } else if (message.equals("!latency") && player.isAdmin()) {
+    connection.send(server.messageBuilder.chat(server.scriptLatencyReport(), player.creature.location));
     } else if (message.equals("!die")) {
     player.creature.callMethod("hurt", Arrays.asList(10000, "gave up"));
     } else if (message.startsWith("!warp ")) {
@@ -124,7 +128,9 @@ onChat { event ->
     connection.send(server.messageBuilder.chat("Invalid player.", player.creature.location));
     }
     } else if (message.equals("!save") && player.isAdmin()) {
-    server.save();
+    if (!server.save()) {
+    connection.send(server.messageBuilder.chat("A save is already in progress.", player.creature.location));
+    }
     } else if (message.startsWith("!item ") && player.isAdmin()) {
     String[] split = message.replaceFirst("!item ", "").split(",", 2);
     String itemInput = split[0];
@@ -158,7 +164,7 @@ onChat { event ->
     if (otherPlayer != null) {
     otherPlayer.setIsAdmin(true);
     server.savePlayer(otherPlayer);
-    server.sendToAll(server.messageBuilder.chat(otherPlayer.creature.getAttribute("name") + " is now an admin.", otherPlayer.creature.location));
+    server.sendToAll(server.messageBuilder.broadcastChat(otherPlayer.creature.getAttribute("name") + " is now an admin.", otherPlayer.creature.location));
     } else {
     connection.send(server.messageBuilder.chat("Invalid player.", player.creature.location));
     }
@@ -192,7 +198,7 @@ onChat { event ->
     } else if (message.startsWith("!")) {
     connection.send(server.messageBuilder.chat("Invalid command.", player.creature.location));
     } else {
-    server.sendToAll(server.messageBuilder.chat((String) player.creature.getAttribute("name"), message, player.creature.location));
+    server.announce((String) player.creature.getAttribute("name"), message, player.creature.location);
     }
     if (message.startsWith("!")) {
     connection.send(server.messageBuilder.chat("Command: " + message, player.creature.location));
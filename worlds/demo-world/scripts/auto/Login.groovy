@@ -2,7 +2,7 @@ onPlayerLogin { event ->
     def player = event.player
     def loc = player.creature.location
     playAnimation(type: "WarpIn", at: loc)
-    announce(message: "$player.username has logged in! Say hi!")
+    announce(message: "$player.username has logged in! Say hi!", global: true)
     alert(message: "Welcome to Gridia, $player.username!\nType !help into the chat for controls.\n${server.whoIsOnline()}", to: player.creature)
     alert(message: "PLEASE READ! This build is meant to prototype the combat system. Here are all the controls you need to know:" +
             "\n" +